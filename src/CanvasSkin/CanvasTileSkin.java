@@ -0,0 +1,790 @@
+package ImageSearchFX.CanvasSkin;
+
+import ImageSearchFX.ImageLoader.ImageLoadRequest;
+import ImageSearchFX.ImageLoader.ImageLoadScheduler;
+import ImageSearchFX.ImageLoader.OutputScaleWatcher;
+import ImageSearchFX.ImageLoader.SizeBuckets;
+import ImageSearchFX.ImageSearchControl;
+import ImageSearchFX.ImageSearcher.ImageResult;
+import ImageSearchFX.TileSkin.SpinnerClock;
+import ImageSearchFX.TileSkin.TileImageView;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.geometry.Orientation;
+import javafx.scene.Cursor;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.control.SkinBase;
+import javafx.scene.effect.BlurType;
+import javafx.scene.effect.DropShadow;
+import javafx.scene.image.Image;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.paint.Color;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Displays the found images as tiles drawn onto a single canvas instead of one node per tile. Hit testing, hover
+ * zoom and shadow are done by hand, and only the visible rows are drawn. Meant for large numbers of results on
+ * slow machines, where hundreds of ImageViews with effects are too expensive.
+ *
+ * Use it via setSkin() or with CSS: -fx-skin: "ImageSearchFX.CanvasSkin.CanvasTileSkin";
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class CanvasTileSkin extends SkinBase<ImageSearchControl>
+{
+    /**
+     * Duration of the hover zoom in nanoseconds
+     */
+    private static final double HOVER_NANOS = 150_000_000;
+
+    /**
+     * Zoom factor of hovered tiles
+     */
+    private static final double HOVER_SCALE = 1.2;
+
+    /**
+     * Maximum shadow radius of hovered tiles
+     */
+    private static final double HOVER_SHADOW_RADIUS = 15.0;
+
+    /**
+     * Background color, same as TileSkin
+     */
+    private static final Color BACKGROUND = Color.web("#777");
+
+    /**
+     * Canvas all tiles are drawn on, only as big as the visible area
+     */
+    private Canvas canvas;
+
+    /**
+     * Scrolls through the rows
+     */
+    private ScrollBar scrollBar;
+
+    /**
+     * Loading spinner image
+     */
+    private Image loadingSpinner;
+
+    /**
+     * Shadow of the hovered tile, only applied while drawing it
+     */
+    private DropShadow hoverShadow;
+
+    /**
+     * All tiles of the current list
+     */
+    private List<CanvasTile> tiles = new ArrayList<>();
+
+    /**
+     * Maximum number of images per row
+     */
+    private int maxPerRow;
+
+    /**
+     * Index of the tile under the mouse, -1 if none
+     */
+    private int hoveredIndex = -1;
+
+    /**
+     * Current angle of the loading spinners
+     */
+    private double spinnerAngle = 0;
+
+    /**
+     * Redraws with the current spinner angle, registered with the SpinnerClock while loading tiles are visible
+     */
+    private DoubleConsumer spinnerUpdater;
+
+    /**
+     * Flag if spinnerUpdater is registered
+     */
+    private boolean spinnerRegistered = false;
+
+    /**
+     * Runs while hover zooms are animating, stops itself once they're done
+     */
+    private AnimationTimer hoverAnimation;
+
+    /**
+     * Size bucket the images of the current list are requested in, only grows until the next list, see SizeBuckets
+     */
+    private int imageBucket = 0;
+
+    /**
+     * Requests sharper images when the control is moved to a screen with a higher output scale
+     */
+    private OutputScaleWatcher outputScaleWatcher;
+
+    /**
+     * Constructor used by CSS, takes the number of images per row from the control
+     *
+     * @param control The control for which this Skin should attach to.
+     */
+    public CanvasTileSkin(ImageSearchControl control)
+    {
+        this(control, control.getMaxPerRow());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param control The control for which this Skin should attach to.
+     * @param perRow  Number of images per row
+     */
+    public CanvasTileSkin(ImageSearchControl control, int perRow)
+    {
+        super(control);
+
+        initializeSelf(perRow);
+        initializeParts();
+        layoutParts();
+        addListeners();
+        addValueChangeListeners();
+    }
+
+    /**
+     * Initializes basic stuff
+     *
+     * @param maxPerRow Maximum number of images per row
+     */
+    private void initializeSelf(int maxPerRow)
+    {
+        this.maxPerRow = maxPerRow;
+    }
+
+    /**
+     * Initializes all parts of this skin
+     */
+    private void initializeParts()
+    {
+        canvas = new Canvas();
+        canvas.getStyleClass().add("canvas-tile-skin-content");
+
+        scrollBar = new ScrollBar();
+        scrollBar.setOrientation(Orientation.VERTICAL);
+        scrollBar.setMin(0);
+
+        loadingSpinner = new Image(
+            TileImageView.class.getResource("spinner.png").toExternalForm(),
+            150, 150, true, true
+        );
+
+        hoverShadow = new DropShadow(BlurType.GAUSSIAN, new Color(0, 0, 0, 1), 0.0, 0.0, 0.0, 0.0);
+
+        spinnerUpdater = angle -> {
+            spinnerAngle = angle;
+            redraw();
+        };
+
+        hoverAnimation = new AnimationTimer() {
+            /**
+             * Time of the previous frame, 0 on the first one
+             */
+            private long lastFrame = 0;
+
+            @Override
+            public void handle(long now)
+            {
+                double step = lastFrame == 0 ? 0 : (now - lastFrame) / HOVER_NANOS;
+                lastFrame = now;
+
+                boolean animating = false;
+                for (int i = 0; i < tiles.size(); i++) {
+                    animating |= tiles.get(i).stepHover(i == hoveredIndex, step);
+                }
+
+                redraw();
+
+                if (!animating) {
+                    lastFrame = 0;
+                    stop();
+                }
+            }
+        };
+    }
+
+    /**
+     * Put canvas and scroll bar into the control
+     */
+    private void layoutParts()
+    {
+        getChildren().addAll(canvas, scrollBar);
+    }
+
+    @Override
+    protected void layoutChildren(double contentX, double contentY, double contentWidth, double contentHeight)
+    {
+        double scrollBarWidth = scrollBar.prefWidth(-1);
+
+        scrollBar.resizeRelocate(contentX + contentWidth - scrollBarWidth, contentY, scrollBarWidth, contentHeight);
+        canvas.relocate(contentX, contentY);
+        canvas.setWidth(Math.max(0, contentWidth - scrollBarWidth));
+        canvas.setHeight(Math.max(0, contentHeight));
+
+        updateScrollRange();
+        redraw();
+    }
+
+    /**
+     * Adds mouse and scroll handling
+     */
+    private void addListeners()
+    {
+        canvas.setOnMouseMoved(this::updateHover);
+        canvas.setOnMouseExited(e -> setHoveredIndex(-1));
+
+        // Set new image URL on property when clicking a loaded tile
+        canvas.setOnMouseClicked(e -> {
+            int index = tileAt(e.getX(), e.getY());
+
+            if (index >= 0 && tiles.get(index).hasImage()) {
+                getSkinnable().selectImage(tiles.get(index).url);
+            }
+        });
+
+        canvas.setOnScroll(e -> scrollBar.setValue(
+            Math.max(scrollBar.getMin(), Math.min(scrollBar.getMax(), scrollBar.getValue() - e.getDeltaY()))
+        ));
+
+        scrollBar.valueProperty().addListener((observable, oldValue, newValue) -> {
+            updatePriorities();
+            redraw();
+            loadNextPageIfNearEnd();
+        });
+    }
+
+    /**
+     * Add value changed listeners
+     */
+    private void addValueChangeListeners()
+    {
+        // Change of loading state should trigger replacement of images with loading spinner
+        getSkinnable().isSearchingProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue) {
+                for (CanvasTile tile : tiles) {
+                    tile.image = null;
+                    tile.failed = false;
+                }
+
+                redraw();
+            }
+        });
+
+        // Larger tiles and screens with a higher output scale need sharper images
+        canvas.widthProperty().addListener((observable, oldValue, newValue) -> updateImageBucket());
+        outputScaleWatcher = new OutputScaleWatcher(getSkinnable(), this::updateImageBucket);
+
+        // Infinite scrolling: The page that just arrived may not fill the canvas
+        getSkinnable().loadingResultsProperty().addListener((observable, oldValue, newValue) -> {
+            if (!newValue) {
+                loadNextPageIfNearEnd();
+            }
+        });
+
+        // As soon as a new list was loaded
+        getSkinnable().imageListProperty().addListener((observable, oldList, newList) -> {
+            if (newList.size() > 0) {
+                if (ImageSearchControl.extendsList(oldList, newList)) {
+                    appendToList(newList.subList(oldList.size(), newList.size()));
+                } else {
+                    showList(newList);
+                }
+            }
+        });
+    }
+
+    /**
+     * Replaces all tiles with the ones of a new list and starts loading them, visible ones first
+     * @param urls Image URLs
+     */
+    private void showList(List<String> urls)
+    {
+        // Images of the previous list that didn't start loading yet aren't needed anymore
+        ImageLoadScheduler scheduler = ImageLoadScheduler.getInstance();
+        scheduler.cancelGroup(this);
+
+        tiles = new ArrayList<>();
+        hoveredIndex = -1;
+        scrollBar.setValue(0);
+        imageBucket = currentBucket();
+
+        appendToList(urls);
+    }
+
+    /**
+     * Adds tiles for URLs that were appended to the current list while the search is still running. Tiles that are
+     * already shown and the scroll position stay untouched.
+     * @param urls Appended image URLs
+     */
+    private void appendToList(List<String> urls)
+    {
+        ImageLoadScheduler scheduler = ImageLoadScheduler.getInstance();
+
+        for (String url : urls) {
+            CanvasTile tile = new CanvasTile(url);
+            tiles.add(tile);
+            loadTile(tile, tiles.size() - 1, scheduler);
+        }
+
+        updateScrollRange();
+        redraw();
+        loadNextPageIfNearEnd();
+    }
+
+    /**
+     * Loads the image of a tile in the variant and size bucket that fit the tiles. A tile that already shows an image
+     * keeps it until the sharper one is loaded.
+     * @param tile      The tile
+     * @param index     Index of the tile
+     * @param scheduler Scheduler to load with
+     */
+    private void loadTile(CanvasTile tile, int index, ImageLoadScheduler scheduler)
+    {
+        // The smallest variant that's still sharp at this size
+        ImageResult result = getSkinnable().getImageResult(tile.url);
+        String url = result.getUrlFor(imageBucket, imageBucket);
+
+        // Already loading this one
+        if (tile.request != null && tile.request.isFor(url, imageBucket, imageBucket)) {
+            return;
+        }
+
+        if (tile.request != null) {
+            tile.request.cancel();
+        }
+
+        final List<CanvasTile> list = tiles;
+        final ImageLoadRequest request = scheduler.submit(this, url, imageBucket, imageBucket, priorityOf(index));
+        tile.request = request;
+
+        request.getImage().whenComplete((image, e) -> Platform.runLater(() -> {
+            // Another list arrived or a sharper image was requested in the meantime
+            if (tiles != list || tile.request != request) {
+                return;
+            }
+
+            if (e != null) {
+                if (!request.getImage().isCancelled()) {
+                    failTile(tile);
+                }
+            } else {
+                waitForImage(tile, request, image);
+            }
+        }));
+    }
+
+    /**
+     * Returns the size bucket that fits the tiles at the current width and output scale
+     * @return The bucket
+     */
+    private int currentBucket()
+    {
+        return SizeBuckets.forTile(tileSize(), SizeBuckets.outputScaleOf(getSkinnable()));
+    }
+
+    /**
+     * Reloads the images in a larger size bucket if the tiles outgrew the current one. Shrinking doesn't load
+     * anything, the larger images are simply scaled down.
+     */
+    private void updateImageBucket()
+    {
+        int bucket = currentBucket();
+
+        if (bucket <= imageBucket) {
+            return;
+        }
+
+        imageBucket = bucket;
+
+        ImageLoadScheduler scheduler = ImageLoadScheduler.getInstance();
+
+        for (int i = 0; i < tiles.size(); i++) {
+            loadTile(tiles.get(i), i, scheduler);
+        }
+    }
+
+    /**
+     * Asks the control for the next page if less than a screen height of tiles is left below the visible ones
+     */
+    private void loadNextPageIfNearEnd()
+    {
+        if (!getSkinnable().hasMoreResults() || getSkinnable().isLoadingResults() || canvas.getHeight() <= 0) {
+            return;
+        }
+
+        if (scrollBar.getMax() - scrollBar.getValue() < canvas.getHeight()) {
+            getSkinnable().loadNextPage();
+        }
+    }
+
+    /**
+     * Shows an image on its tile once it's fully loaded, unless the tile has moved on to another load by then
+     * @param tile    The tile
+     * @param request Load the image belongs to
+     * @param image   The image, may still be loading
+     */
+    private void waitForImage(CanvasTile tile, ImageLoadRequest request, Image image)
+    {
+        if (image.isError()) {
+            failTile(tile);
+            return;
+        }
+
+        if (image.getProgress() >= 1.0) {
+            tile.image = image;
+            redraw();
+            return;
+        }
+
+        image.progressProperty().addListener((observable, oldValue, progress) -> {
+            if (progress.doubleValue() >= 1.0 && !image.isError() && tile.request == request) {
+                tile.image = image;
+                redraw();
+            }
+        });
+
+        image.errorProperty().addListener((observable, oldValue, isError) -> {
+            if (isError && tile.request == request) {
+                failTile(tile);
+            }
+        });
+    }
+
+    /**
+     * Leaves a tile empty because its image couldn't be loaded. Counts as loaded, so it doesn't keep the spinner
+     * clock running. A tile that already shows a smaller version of the image keeps it.
+     * @param tile The tile
+     */
+    private void failTile(CanvasTile tile)
+    {
+        if (tile.hasImage()) {
+            return;
+        }
+
+        tile.failed = true;
+        redraw();
+    }
+
+    /**
+     * Updates the priorities of all loads that didn't start yet
+     */
+    private void updatePriorities()
+    {
+        for (int i = 0; i < tiles.size(); i++) {
+            ImageLoadRequest request = tiles.get(i).request;
+
+            if (request != null && !request.getImage().isDone()) {
+                request.setPriority(priorityOf(i));
+            }
+        }
+    }
+
+    /**
+     * Determines the load priority of a tile by its row relative to the visible rows
+     * @param index Index of the tile
+     * @return Its priority
+     */
+    private ImageLoadScheduler.Priority priorityOf(int index)
+    {
+        double tileSize = tileSize();
+        double viewportHeight = canvas.getHeight();
+
+        if (tileSize <= 0 || viewportHeight <= 0) {
+            return ImageLoadScheduler.Priority.NEAR_VIEWPORT;
+        }
+
+        double top = scrollBar.getValue();
+        double tileTop = (index / maxPerRow) * tileSize;
+
+        if (tileTop + tileSize >= top && tileTop <= top + viewportHeight) {
+            return ImageLoadScheduler.Priority.VISIBLE;
+        }
+
+        if (tileTop + tileSize >= top - viewportHeight && tileTop <= top + 2 * viewportHeight) {
+            return ImageLoadScheduler.Priority.NEAR_VIEWPORT;
+        }
+
+        return ImageLoadScheduler.Priority.BACKGROUND;
+    }
+
+    /**
+     * Updates the scrollable range to the number of rows
+     */
+    private void updateScrollRange()
+    {
+        int rows = (tiles.size() + maxPerRow - 1) / maxPerRow;
+        double scrollable = Math.max(0, rows * tileSize() - canvas.getHeight());
+
+        scrollBar.setMax(scrollable);
+        scrollBar.setVisibleAmount(canvas.getHeight());
+        scrollBar.setUnitIncrement(tileSize() / 4);
+        scrollBar.setBlockIncrement(canvas.getHeight());
+
+        if (scrollBar.getValue() > scrollable) {
+            scrollBar.setValue(scrollable);
+        }
+    }
+
+    /**
+     * Width and height of a single tile
+     * @return Tile size
+     */
+    private double tileSize()
+    {
+        return Math.floor(canvas.getWidth() / maxPerRow);
+    }
+
+    /**
+     * Finds the tile at a position on the canvas
+     * @param x X on the canvas
+     * @param y Y on the canvas
+     * @return Index of the tile or -1 if there's none
+     */
+    private int tileAt(double x, double y)
+    {
+        double tileSize = tileSize();
+
+        if (tileSize <= 0 || x < 0 || x >= tileSize * maxPerRow) {
+            return -1;
+        }
+
+        int column = (int) (x / tileSize);
+        int row = (int) ((y + scrollBar.getValue()) / tileSize);
+        int index = row * maxPerRow + column;
+
+        return index < tiles.size() ? index : -1;
+    }
+
+    /**
+     * Updates the hovered tile and the cursor on mouse movement
+     * @param e The mouse event
+     */
+    private void updateHover(MouseEvent e)
+    {
+        int index = tileAt(e.getX(), e.getY());
+
+        if (index < 0) {
+            canvas.setCursor(Cursor.DEFAULT);
+            setHoveredIndex(-1);
+            return;
+        }
+
+        // Loading and failed tiles don't zoom, same as TileImageView
+        CanvasTile tile = tiles.get(index);
+        canvas.setCursor(tile.hasImage() ? Cursor.HAND : (tile.isLoaded() ? Cursor.DEFAULT : Cursor.WAIT));
+        setHoveredIndex(tile.hasImage() ? index : -1);
+    }
+
+    /**
+     * Changes the hovered tile and starts the zoom animation
+     * @param index Index of the tile, -1 for none
+     */
+    private void setHoveredIndex(int index)
+    {
+        if (index == hoveredIndex) {
+            return;
+        }
+
+        hoveredIndex = index;
+        hoverAnimation.start();
+    }
+
+    /**
+     * Draws all visible tiles. Zoomed tiles are drawn last, so they're on top of their neighbours.
+     */
+    private void redraw()
+    {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        double tileSize = tileSize();
+
+        gc.setFill(BACKGROUND);
+        gc.fillRect(0, 0, width, height);
+
+        if (tileSize <= 0) {
+            updateSpinnerRegistration(false);
+            return;
+        }
+
+        double offset = scrollBar.getValue();
+        int firstRow = (int) (offset / tileSize);
+        int lastRow = (int) ((offset + height) / tileSize);
+        int first = Math.max(0, firstRow * maxPerRow);
+        int last = Math.min(tiles.size(), (lastRow + 1) * maxPerRow);
+
+        boolean loadingVisible = false;
+        List<Integer> zoomed = new ArrayList<>();
+
+        for (int i = first; i < last; i++) {
+            CanvasTile tile = tiles.get(i);
+
+            if (tile.hover > 0) {
+                zoomed.add(i);
+                continue;
+            }
+
+            loadingVisible |= !tile.isLoaded();
+            drawTile(gc, i, tileSize, offset);
+        }
+
+        for (int i : zoomed) {
+            drawTile(gc, i, tileSize, offset);
+        }
+
+        updateSpinnerRegistration(loadingVisible);
+    }
+
+    /**
+     * Draws a single tile
+     * @param gc       Graphics context of the canvas
+     * @param index    Index of the tile
+     * @param tileSize Width and height of a tile
+     * @param offset   Scroll offset
+     */
+    private void drawTile(GraphicsContext gc, int index, double tileSize, double offset)
+    {
+        CanvasTile tile = tiles.get(index);
+        double x = (index % maxPerRow) * tileSize;
+        double y = (index / maxPerRow) * tileSize - offset;
+
+        if (!tile.isLoaded()) {
+            gc.save();
+            gc.translate(x + tileSize / 2, y + tileSize / 2);
+            gc.rotate(spinnerAngle);
+            gc.drawImage(loadingSpinner, -tileSize / 2, -tileSize / 2, tileSize, tileSize);
+            gc.restore();
+            return;
+        }
+
+        // Failed tiles stay empty
+        if (!tile.hasImage()) {
+            return;
+        }
+
+        // Fit into the tile and keep the aspect ratio, same as the ImageViews of TileSkin with preserveRatio
+        double fit = Math.min(tileSize / tile.image.getWidth(), tileSize / tile.image.getHeight());
+        double scale = tile.hover <= 0 ? 1 : 1 + (HOVER_SCALE - 1) * tile.hover;
+        double width = tile.image.getWidth() * fit * scale;
+        double height = tile.image.getHeight() * fit * scale;
+        double left = x + (tileSize - width) / 2;
+        double top = y + (tileSize - height) / 2;
+
+        if (tile.hover <= 0) {
+            gc.drawImage(tile.image, left, top, width, height);
+            return;
+        }
+
+        // Shadow is only applied for this single draw call
+        hoverShadow.setRadius(HOVER_SHADOW_RADIUS * tile.hover);
+        gc.save();
+        gc.setEffect(hoverShadow);
+        gc.drawImage(tile.image, left, top, width, height);
+        gc.restore();
+    }
+
+    /**
+     * Registers with the SpinnerClock while loading tiles are visible, so an idle skin doesn't redraw at all
+     * @param loadingVisible True if loading tiles are visible
+     */
+    private void updateSpinnerRegistration(boolean loadingVisible)
+    {
+        if (loadingVisible && !spinnerRegistered) {
+            SpinnerClock.getInstance().register(spinnerUpdater);
+            spinnerRegistered = true;
+        } else if (!loadingVisible && spinnerRegistered) {
+            SpinnerClock.getInstance().unregister(spinnerUpdater);
+            spinnerRegistered = false;
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        ImageLoadScheduler.getInstance().cancelGroup(this);
+        outputScaleWatcher.dispose();
+        updateSpinnerRegistration(false);
+        hoverAnimation.stop();
+
+        super.dispose();
+    }
+
+    /**
+     * State of a single tile
+     */
+    private static class CanvasTile
+    {
+        /**
+         * URL of the image, as found in the image list
+         */
+        private final String url;
+
+        /**
+         * Fully loaded image, null while loading
+         */
+        private Image image;
+
+        /**
+         * Load of the image, in the variant and size bucket last requested
+         */
+        private ImageLoadRequest request;
+
+        /**
+         * Flag if the image couldn't be loaded
+         */
+        private boolean failed = false;
+
+        /**
+         * Progress of the hover zoom, 0 is not zoomed, 1 is fully zoomed
+         */
+        private double hover = 0;
+
+        /**
+         * Constructor
+         * @param url URL of the image
+         */
+        CanvasTile(String url)
+        {
+            this.url = url;
+        }
+
+        /**
+         * Determine if loading is done, either with the image shown or failed
+         * @return True if loaded
+         */
+        boolean isLoaded()
+        {
+            return image != null || failed;
+        }
+
+        /**
+         * Determine if the image is shown
+         * @return True if there is an image
+         */
+        boolean hasImage()
+        {
+            return image != null;
+        }
+
+        /**
+         * Moves the hover zoom a step towards zoomed or not zoomed
+         * @param hovered True if the tile is hovered
+         * @param step    Fraction of the zoom duration since the last step
+         * @return True if the zoom is still animating
+         */
+        boolean stepHover(boolean hovered, double step)
+        {
+            double target = hovered ? 1 : 0;
+            hover = hovered ? Math.min(target, hover + step) : Math.max(target, hover - step);
+
+            return hover != target;
+        }
+    }
+}
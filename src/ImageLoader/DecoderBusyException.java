@@ -0,0 +1,22 @@
+package ImageSearchFX.ImageLoader;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Exception for images an ImageDecoder has no room for, because all threads are busy and the queue is full. Tells
+ * nothing about the image itself, it can be decoded once the decoder caught up, see ImageLoadScheduler.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class DecoderBusyException extends RejectedExecutionException
+{
+    /**
+     * Constructor
+     * @param message Message of the exception
+     * @param cause   Rejection of the decoder's executor
+     */
+    public DecoderBusyException(String message, Throwable cause)
+    {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,563 @@
+package ImageSearchFX.ImageLoader;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Cache of decoded images, shared by all tiles of all ImageSearchControls. Images are keyed by URL and requested
+ * size, so showing the same result again, or in another control, neither downloads nor decodes it a second time.
+ * Images still loading in the background are handed out as well, so concurrent requests share a single load.
+ *
+ * The cache is bounded by the memory the decoded pixels take (width x height x 4 bytes) and evicts the least
+ * recently used images first.
+ *
+ * Optionally backed by a ThumbnailDiskCache: Images not in memory are looked up on disk before they're downloaded,
+ * and downloaded ones are stored there for the next session. Images that have to be downloaded are decoded by an
+ * ImageDecoder if one is set, JavaFX's loader only takes those it can't handle.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class ImageCache
+{
+    /**
+     * Default memory budget, 64 MiB
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * Shared instance
+     */
+    private static ImageCache instance;
+
+    /**
+     * Cached images in access order, so the eldest one is the least recently used
+     */
+    private final LinkedHashMap<Key, Image> images = new LinkedHashMap<>(64, 0.75f, true);
+
+    /**
+     * Keys of the cached images by URL, to find the same image in other sizes
+     */
+    private final Map<String, List<Key>> keysByUrl = new HashMap<>();
+
+    /**
+     * Disk reads and downloads in progress, so concurrent requests for the same image share a single load
+     */
+    private final Map<Key, PendingLoad> pendingReads = new HashMap<>();
+
+    /**
+     * Persistent cache behind this one, null to always download images that aren't in memory
+     */
+    private ThumbnailDiskCache diskCache;
+
+    /**
+     * Decodes images that are neither in memory nor on disk, null to leave them to JavaFX's loader
+     */
+    private ImageDecoder decoder;
+
+    /**
+     * Memory budget in bytes
+     */
+    private long maxBytes;
+
+    /**
+     * Memory currently taken by cached images in bytes
+     */
+    private long currentBytes = 0;
+
+    /**
+     * Constructor
+     * @param maxBytes Memory budget in bytes
+     */
+    public ImageCache(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the shared instance, created with the default budget on first use. It doesn't write anything to disk
+     * unless enableDiskCache() or setDiskCache() is called.
+     * @return The shared cache
+     */
+    public static synchronized ImageCache getInstance()
+    {
+        if (instance == null) {
+            instance = new ImageCache(DEFAULT_MAX_BYTES);
+            instance.setDecoder(ImageDecoder.getInstance());
+        }
+
+        return instance;
+    }
+
+    /**
+     * Returns the image for a URL in the given size if it's in memory, doesn't load anything
+     * @param url    URL of the image
+     * @param width  Requested width
+     * @param height Requested height
+     * @return The image, may still be loading, or null if it's not in memory
+     */
+    public synchronized Image getIfPresent(String url, double width, double height)
+    {
+        Image image = images.get(new Key(url, (int) width, (int) height));
+
+        return image == null || image.isError() ? null : image;
+    }
+
+    /**
+     * Returns the smallest image for a URL that is at least the given size if it's in memory, doesn't load anything.
+     * Larger images look just as sharp when scaled down, so they don't need to be loaded again in a smaller size.
+     * @param url    URL of the image
+     * @param width  Requested width
+     * @param height Requested height
+     * @return The image, may still be loading, or null if it's not in memory in that size or larger
+     */
+    public synchronized Image getAtLeast(String url, double width, double height)
+    {
+        List<Key> keys = keysByUrl.get(url);
+        Key smallest = null;
+
+        if (keys == null) {
+            return null;
+        }
+
+        for (Key key : keys) {
+            if (key.width >= (int) width && key.height >= (int) height
+                    && (smallest == null || key.bytes() < smallest.bytes())) {
+                Image image = images.get(key);
+
+                if (image != null && !image.isError()) {
+                    smallest = key;
+                }
+            }
+        }
+
+        return smallest == null ? null : images.get(smallest);
+    }
+
+    /**
+     * Returns the image for a URL in the given size. Looks in memory first, then on disk and only downloads it if
+     * it's in neither. Every caller gets a future of its own, the load is only cancelled once all of them cancelled
+     * theirs.
+     * @param url    URL of the image
+     * @param width  Requested width
+     * @param height Requested height
+     * @return Future of the image, completed on the FX application thread. The image itself may still be loading
+     *         once the future completes. Fails if the image couldn't be downloaded.
+     */
+    public synchronized CompletableFuture<Image> load(String url, double width, double height)
+    {
+        Key key = new Key(url, (int) width, (int) height);
+        Image image = images.get(key);
+
+        if ((image != null && !image.isError()) || (diskCache == null && decoder == null)) {
+            return CompletableFuture.completedFuture(get(url, width, height));
+        }
+
+        PendingLoad pending = pendingReads.get(key);
+        if (pending != null) {
+            return pending.join();
+        }
+
+        final ThumbnailDiskCache targetCache = diskCache;
+        final ImageDecoder targetDecoder = decoder;
+        final PendingLoad started = new PendingLoad(key);
+        CompletableFuture<Image> stored = targetCache != null
+            ? targetCache.read(url, key.width, key.height)
+            : CompletableFuture.completedFuture(null);
+
+        // Not on disk, decode it off the FX thread. Decoded images are complete and can go to disk right away.
+        CompletableFuture<Image> loaded = stored.thenCompose(found -> {
+            if (found != null || targetDecoder == null) {
+                return CompletableFuture.completedFuture(found);
+            }
+
+            CompletableFuture<Image> decoding = targetDecoder.decode(url, key.width, key.height);
+            started.setDecoding(decoding);
+
+            return decoding.thenApply(decoded -> {
+                if (decoded != null && targetCache != null) {
+                    targetCache.write(url, key.width, key.height, decoded);
+                }
+
+                return decoded;
+            });
+        });
+
+        // Back on the FX thread: JavaFX's loader creates the Image and its listeners there, and so do the callers of
+        // this future. Listeners added on other threads while the FX thread fires them could get lost.
+        loaded.handleAsync((found, e) -> {
+            synchronized (this) {
+                pendingReads.remove(key, started);
+
+                // Failed loads aren't remembered, so the next request retries
+                if (e != null) {
+                    throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+                }
+
+                // Neither on disk nor decodable here, JavaFX's loader is the last resort
+                if (found == null) {
+                    return get(url, width, height);
+                }
+
+                put(key, found);
+                return found;
+            }
+        }, Platform::runLater).whenComplete((result, e) -> {
+            if (e != null) {
+                started.shared.completeExceptionally(e);
+            } else {
+                started.shared.complete(result);
+            }
+        });
+
+        // Can't have completed yet, completing it needs the lock held here
+        pendingReads.put(key, started);
+
+        return started.join();
+    }
+
+    /**
+     * Returns the image for a URL in the given size. Starts loading it in the background if it's not cached yet.
+     * @param url    URL of the image
+     * @param width  Requested width
+     * @param height Requested height
+     * @return The image, may still be loading
+     */
+    public synchronized Image get(String url, double width, double height)
+    {
+        Key key = new Key(url, (int) width, (int) height);
+        Image image = images.get(key);
+
+        if (image != null && !image.isError()) {
+            return image;
+        }
+
+        if (image != null) {
+            remove(key);
+        }
+
+        // Scaled to fit the requested size, tiles reserve space by the aspect ratio and must not get stretched images
+        image = new Image(url, key.width, key.height, true, true, true);
+        put(key, image);
+
+        // Downloaded images go to disk as well, so the next session doesn't need to download them again
+        if (diskCache != null) {
+            final Image downloading = image;
+            final ThumbnailDiskCache targetCache = diskCache;
+            image.progressProperty().addListener((observable, oldValue, progress) -> {
+                if (progress.doubleValue() >= 1.0 && !downloading.isError()) {
+                    targetCache.write(url, key.width, key.height, downloading);
+                }
+            });
+        }
+
+        // Failed loads shouldn't be handed out again, so the next request retries
+        final Image loading = image;
+        image.errorProperty().addListener((observable, oldValue, isError) -> {
+            if (isError) {
+                synchronized (this) {
+                    if (images.get(key) == loading) {
+                        remove(key);
+                    }
+                }
+            }
+        });
+
+        return image;
+    }
+
+    /**
+     * Enables the persistent cache behind this one in the default directory with the default size limit, see
+     * ThumbnailDiskCache.getDefaultDirectory(). Does nothing if there already is one.
+     */
+    public synchronized void enableDiskCache()
+    {
+        if (diskCache == null) {
+            diskCache = new ThumbnailDiskCache(
+                ThumbnailDiskCache.getDefaultDirectory(),
+                ThumbnailDiskCache.DEFAULT_MAX_BYTES
+            );
+        }
+    }
+
+    /**
+     * Sets the persistent cache behind this one
+     * @param diskCache The disk cache, null to disable it
+     */
+    public synchronized void setDiskCache(ThumbnailDiskCache diskCache)
+    {
+        this.diskCache = diskCache;
+    }
+
+    /**
+     * Sets the decoder for images that are neither in memory nor on disk
+     * @param decoder The decoder, null to leave decoding to JavaFX's loader
+     */
+    public synchronized void setDecoder(ImageDecoder decoder)
+    {
+        this.decoder = decoder;
+    }
+
+    /**
+     * Changes the memory budget, evicts images right away if the cache is too big for the new budget
+     * @param maxBytes Memory budget in bytes
+     */
+    public synchronized void setMaxBytes(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * Returns the memory currently taken by cached images
+     * @return Bytes
+     */
+    public synchronized long getCurrentBytes()
+    {
+        return currentBytes;
+    }
+
+    /**
+     * Removes all images
+     */
+    public synchronized void clear()
+    {
+        images.clear();
+        keysByUrl.clear();
+        currentBytes = 0;
+    }
+
+    /**
+     * Adds an image and evicts others if the budget is exceeded
+     * @param key   Key of the image
+     * @param image The image
+     */
+    private void put(Key key, Image image)
+    {
+        if (images.put(key, image) == null) {
+            keysByUrl.computeIfAbsent(key.url, url -> new ArrayList<>(2)).add(key);
+        } else {
+            currentBytes -= key.bytes();
+        }
+
+        currentBytes += key.bytes();
+        evict();
+    }
+
+    /**
+     * Removes a single image
+     * @param key Key of the image
+     */
+    private void remove(Key key)
+    {
+        if (images.remove(key) != null) {
+            currentBytes -= key.bytes();
+            forget(key);
+        }
+    }
+
+    /**
+     * Evicts least recently used images until the budget is met. Images that are still displayed aren't
+     * affected, they're simply not handed out anymore.
+     */
+    private void evict()
+    {
+        Iterator<Map.Entry<Key, Image>> iterator = images.entrySet().iterator();
+
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Key key = iterator.next().getKey();
+            currentBytes -= key.bytes();
+            iterator.remove();
+            forget(key);
+        }
+    }
+
+    /**
+     * Removes a key from the keys by URL
+     * @param key The key
+     */
+    private void forget(Key key)
+    {
+        List<Key> keys = keysByUrl.get(key.url);
+
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            keysByUrl.remove(key.url);
+        }
+    }
+
+    /**
+     * A disk read or download in progress, shared by all callers of load() for the same image
+     */
+    private final class PendingLoad
+    {
+        /**
+         * Key of the image
+         */
+        private final Key key;
+
+        /**
+         * Result of the load, completed on the FX application thread
+         */
+        private final CompletableFuture<Image> shared = new CompletableFuture<>();
+
+        /**
+         * Decoder's future once the image is downloaded, null before. Cancelling it aborts the download.
+         */
+        private CompletableFuture<Image> decoding;
+
+        /**
+         * Number of callers still waiting for the image, guarded by the cache
+         */
+        private int waiting = 0;
+
+        /**
+         * Flag if every caller left, guarded by the cache
+         */
+        private boolean abandoned = false;
+
+        /**
+         * Constructor
+         * @param key Key of the image
+         */
+        PendingLoad(Key key)
+        {
+            this.key = key;
+        }
+
+        /**
+         * Creates a future for a single caller, guarded by the cache
+         * @return Future that only belongs to the caller, cancelling it detaches the caller
+         */
+        CompletableFuture<Image> join()
+        {
+            CompletableFuture<Image> caller = new CompletableFuture<>();
+            waiting++;
+
+            shared.whenComplete((image, e) -> {
+                if (e != null) {
+                    caller.completeExceptionally(e);
+                } else {
+                    caller.complete(image);
+                }
+            });
+
+            caller.whenComplete((image, e) -> {
+                if (caller.isCancelled()) {
+                    leave();
+                }
+            });
+
+            return caller;
+        }
+
+        /**
+         * Detaches a caller, cancels the load if it was the last one
+         */
+        private void leave()
+        {
+            CompletableFuture<Image> running;
+
+            synchronized (ImageCache.this) {
+                if (--waiting > 0 || !pendingReads.remove(key, this)) {
+                    return;
+                }
+
+                abandoned = true;
+                running = decoding;
+            }
+
+            shared.cancel(false);
+
+            if (running != null) {
+                running.cancel(true);
+            }
+        }
+
+        /**
+         * Sets the decoder's future, cancels it right away if every caller already left
+         * @param decoding The decoder's future
+         */
+        void setDecoding(CompletableFuture<Image> decoding)
+        {
+            synchronized (ImageCache.this) {
+                this.decoding = decoding;
+
+                if (!abandoned) {
+                    return;
+                }
+            }
+
+            decoding.cancel(true);
+        }
+    }
+
+    /**
+     * Key of a cached image: URL and requested size
+     */
+    private static final class Key
+    {
+        /**
+         * URL of the image
+         */
+        private final String url;
+
+        /**
+         * Requested width
+         */
+        private final int width;
+
+        /**
+         * Requested height
+         */
+        private final int height;
+
+        /**
+         * Constructor
+         * @param url    URL of the image
+         * @param width  Requested width
+         * @param height Requested height
+         */
+        Key(String url, int width, int height)
+        {
+            this.url = url;
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * Memory taken by the decoded image
+         * @return Bytes
+         */
+        long bytes()
+        {
+            return (long) width * height * 4;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) o;
+
+            return width == other.width && height == other.height && url.equals(other.url);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(url, width, height);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package ImageSearchFX.ImageLoader;
+
+import ImageSearchFX.ImageSearcher.Executor.SearchExecutors;
+import ImageSearchFX.ImageSearcher.HTTP.CancellableInputStream;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Downloads and decodes tile images on a small pool of its own, instead of JavaFX's background loader. Images are
+ * decoded with ImageIO's source subsampling, so large originals never exist in full resolution in memory: Only every
+ * n-th pixel of every n-th row is kept while decoding, the rest of the way to the tile size is a cheap downscale.
+ * The number of threads bounds how many images are decoded at once, which bounds the memory they take.
+ *
+ * Formats ImageIO can't read are left to JavaFX's loader, see ImageCache. Failed downloads fail right away instead,
+ * JavaFX's loader would only download them a second time. Images there's no room for fail with a DecoderBusyException,
+ * they're held back by the ImageLoadScheduler until the decoder caught up.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class ImageDecoder
+{
+    /**
+     * Default number of images decoded at once
+     */
+    public static final int DEFAULT_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+
+    /**
+     * Number of images waiting for a thread, the ImageLoadScheduler already limits how many loads run at once
+     */
+    private static final int QUEUE_CAPACITY = 32;
+
+    /**
+     * Largest file that is downloaded, larger ones fail
+     */
+    private static final int MAX_FILE_BYTES = 32 * 1024 * 1024;
+
+    /**
+     * Maximum time to wait for a connection to the image server
+     */
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * Maximum time to wait for data while downloading
+     */
+    private static final int READ_TIMEOUT_MILLIS = 15000;
+
+    /**
+     * Shared instance
+     */
+    private static ImageDecoder instance;
+
+    /**
+     * Threads downloading and decoding
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Constructor
+     * @param threads Number of images decoded at once
+     */
+    public ImageDecoder(int threads)
+    {
+        executor = SearchExecutors.newBoundedExecutor(
+            "image-decoder",
+            threads,
+            QUEUE_CAPACITY,
+            SearchExecutors.RejectionPolicy.ABORT,
+            false
+        );
+    }
+
+    /**
+     * Returns the shared instance, created with the default number of threads on first use
+     * @return The shared decoder
+     */
+    public static synchronized ImageDecoder getInstance()
+    {
+        if (instance == null) {
+            instance = new ImageDecoder(DEFAULT_THREADS);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Downloads and decodes an image, scaled down to fit into the given size. Images are never scaled up. Cancelling
+     * the future drops a queued image and aborts a running download.
+     * @param url    URL of the image
+     * @param width  Requested width
+     * @param height Requested height
+     * @return Future of the completely loaded image, completes with null if ImageIO can't read the image or the decoder
+     *         was shut down, fails if it couldn't be downloaded and with a DecoderBusyException if the queue is full
+     */
+    public CompletableFuture<Image> decode(String url, int width, int height)
+    {
+        CompletableFuture<Image> future = new CompletableFuture<>();
+        AtomicReference<URLConnection> connection = new AtomicReference<>();
+
+        Runnable task = () -> {
+            if (future.isDone()) {
+                return;
+            }
+
+            try {
+                future.complete(read(url, width, height, connection, future::isCancelled));
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        };
+
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Full queue, the image can still be decoded later. Only a shut down decoder leaves it to JavaFX's loader.
+            if (executor.isShutdown()) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(new DecoderBusyException("No room to decode " + url, e));
+            }
+
+            return future;
+        }
+
+        // Nobody needs the image anymore, free the thread and the connection
+        future.whenComplete((image, e) -> {
+            if (!future.isCancelled()) {
+                return;
+            }
+
+            executor.remove(task);
+
+            URLConnection running = connection.get();
+            if (running instanceof HttpURLConnection) {
+                ((HttpURLConnection) running).disconnect();
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Shuts down the threads, queued images are left to JavaFX's loader
+     */
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Downloads and decodes an image
+     * @param url         URL of the image
+     * @param width       Requested width
+     * @param height      Requested height
+     * @param connection  Gets the connection of the download, to abort it
+     * @param isCancelled Tells if the image isn't needed anymore
+     * @return The image, null if ImageIO can't read it
+     * @throws IOException If the image couldn't be downloaded
+     */
+    private static Image read(
+        String url,
+        int width,
+        int height,
+        AtomicReference<URLConnection> connection,
+        BooleanSupplier isCancelled
+    ) throws IOException {
+        byte[] bytes = download(url, connection, isCancelled);
+
+        try (ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+
+            try {
+                reader.setInput(input, true, true);
+
+                int sourceWidth = reader.getWidth(0);
+                int sourceHeight = reader.getHeight(0);
+                double scale = Math.min(1, Math.min((double) width / sourceWidth, (double) height / sourceHeight));
+                int targetWidth = Math.max(1, (int) Math.round(sourceWidth * scale));
+                int targetHeight = Math.max(1, (int) Math.round(sourceHeight * scale));
+
+                // Keep every n-th pixel while decoding, as many as possible without dropping below the target size
+                int subsampling = Math.max(1, (int) Math.floor(1 / scale));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+                return toFxImage(scale(reader.read(0, param), targetWidth, targetHeight));
+            } catch (IOException e) {
+                // A variant of the format ImageIO doesn't support, i.e. CMYK JPEGs
+                return null;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Downloads the file of an image
+     * @param url         URL of the image
+     * @param connection  Gets the connection of the download, to abort it
+     * @param isCancelled Tells if the image isn't needed anymore
+     * @return The file
+     * @throws IOException If the server answered with an error, didn't answer in time, the file is too large or the
+     *                     download was cancelled
+     */
+    private static byte[] download(
+        String url,
+        AtomicReference<URLConnection> connection,
+        BooleanSupplier isCancelled
+    ) throws IOException {
+        URLConnection opened = new URL(url).openConnection();
+        opened.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        opened.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.set(opened);
+
+        if (opened instanceof HttpURLConnection) {
+            int status = ((HttpURLConnection) opened).getResponseCode();
+
+            if (status >= 400) {
+                throw new IOException("Image server answered with HTTP " + status + " for " + url);
+            }
+        }
+
+        if (opened.getContentLengthLong() > MAX_FILE_BYTES) {
+            throw new IOException("Image is larger than " + MAX_FILE_BYTES + " bytes: " + url);
+        }
+
+        try (InputStream stream = new CancellableInputStream(opened.getInputStream(), isCancelled)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                Math.max(8192, (int) Math.max(0, opened.getContentLengthLong()))
+            );
+            byte[] buffer = new byte[8192];
+            int read;
+
+            while ((read = stream.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+
+                if (bytes.size() > MAX_FILE_BYTES) {
+                    throw new IOException("Image is larger than " + MAX_FILE_BYTES + " bytes: " + url);
+                }
+            }
+
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Scales a decoded image to its final size and converts it to premultiplied ARGB, the format JavaFX uses
+     * @param decoded The decoded, subsampled image
+     * @param width   Final width
+     * @param height  Final height
+     * @return The scaled image
+     */
+    private static BufferedImage scale(BufferedImage decoded, int width, int height)
+    {
+        if (decoded.getType() == BufferedImage.TYPE_INT_ARGB_PRE
+                && decoded.getWidth() == width && decoded.getHeight() == height) {
+            return decoded;
+        }
+
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D graphics = scaled.createGraphics();
+
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(decoded, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        return scaled;
+    }
+
+    /**
+     * Copies the pixels of a premultiplied ARGB image into a JavaFX image
+     * @param image The image
+     * @return The JavaFX image, completely loaded
+     */
+    private static Image toFxImage(BufferedImage image)
+    {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        WritableImage fxImage = new WritableImage(width, height);
+        fxImage.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbPreInstance(), pixels, 0, width);
+
+        return fxImage;
+    }
+}
@@ -0,0 +1,147 @@
+package ImageSearchFX.ImageLoader;
+
+import javafx.scene.image.Image;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A single image load queued in the ImageLoadScheduler. Its priority can be changed while it's waiting, i.e. when
+ * the tile it belongs to is scrolled into view.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class ImageLoadRequest
+{
+    /**
+     * Scheduler this request is queued in
+     */
+    private final ImageLoadScheduler scheduler;
+
+    /**
+     * Owner of the request, i.e. a skin, to drop all its requests at once
+     */
+    final Object group;
+
+    /**
+     * URL of the image
+     */
+    final String url;
+
+    /**
+     * Requested width
+     */
+    final int width;
+
+    /**
+     * Requested height
+     */
+    final int height;
+
+    /**
+     * Order of submission, requests with the same priority are started first come, first served
+     */
+    final long sequence;
+
+    /**
+     * Current priority
+     */
+    volatile ImageLoadScheduler.Priority priority;
+
+    /**
+     * Future of the image, completes once the load was started and the image is available
+     */
+    private final CompletableFuture<Image> image = new CompletableFuture<>();
+
+    /**
+     * Future of the load once the request was started, null before. Cancelling it stops the download.
+     */
+    volatile CompletableFuture<Image> load;
+
+    /**
+     * Constructor
+     * @param scheduler Scheduler this request is queued in
+     * @param group     Owner of the request
+     * @param url       URL of the image
+     * @param width     Requested width
+     * @param height    Requested height
+     * @param priority  Initial priority
+     * @param sequence  Order of submission
+     */
+    ImageLoadRequest(
+        ImageLoadScheduler scheduler,
+        Object group,
+        String url,
+        int width,
+        int height,
+        ImageLoadScheduler.Priority priority,
+        long sequence
+    ) {
+        this.scheduler = scheduler;
+        this.group = group;
+        this.url = url;
+        this.width = width;
+        this.height = height;
+        this.priority = priority;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Returns the future of the image, completes once the load was started. The image may still be loading then.
+     * @return Future of the image
+     */
+    public CompletableFuture<Image> getImage()
+    {
+        return image;
+    }
+
+    /**
+     * Returns the URL of the image
+     * @return The URL
+     */
+    public String getUrl()
+    {
+        return url;
+    }
+
+    /**
+     * Changes the priority, only has an effect while the request is still queued
+     * @param priority The new priority
+     */
+    public void setPriority(ImageLoadScheduler.Priority priority)
+    {
+        if (this.priority != priority) {
+            scheduler.reprioritize(this, priority);
+        }
+    }
+
+    /**
+     * Removes the request from the queue. Loads that already started stop downloading, unless other requests wait for
+     * the same image.
+     */
+    public void cancel()
+    {
+        scheduler.cancel(this);
+    }
+
+    /**
+     * Determine if the request loads an image in the given size and may still deliver it, so a tile asking for the
+     * same image again can keep it instead of cancelling a running download and starting over
+     * @param url    URL of the image
+     * @param width  Requested width
+     * @param height Requested height
+     * @return True if the request can be kept
+     */
+    public boolean isFor(String url, int width, int height)
+    {
+        return this.url.equals(url) && this.width == width && this.height == height && !image.isCompletedExceptionally();
+    }
+
+    /**
+     * Determine if the request was cancelled
+     * @return True if cancelled
+     */
+    public boolean isCancelled()
+    {
+        return image.isCancelled();
+    }
+}
@@ -0,0 +1,340 @@
+package ImageSearchFX.ImageLoader;
+
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.scene.image.Image;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limits the number of images loading at the same time and starts them in order of priority, so visible tiles
+ * don't compete for bandwidth with tiles far out of view. Images already in memory are handed out right away.
+ * Loads the ImageDecoder has no room for are put back into the queue and started again after a short pause.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class ImageLoadScheduler
+{
+    /**
+     * Priorities of loads, the ones listed first are started first
+     */
+    public enum Priority
+    {
+        /**
+         * The tile is visible
+         */
+        VISIBLE,
+
+        /**
+         * The tile is close to the visible area, likely to be scrolled into view soon
+         */
+        NEAR_VIEWPORT,
+
+        /**
+         * Everything else
+         */
+        BACKGROUND
+    }
+
+    /**
+     * Default maximum number of concurrently loading images
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_LOADS = 6;
+
+    /**
+     * Time to wait before starting loads again once the decoder was busy
+     */
+    private static final long DECODER_BUSY_PAUSE_MILLIS = 100;
+
+    /**
+     * Shared instance
+     */
+    private static ImageLoadScheduler instance;
+
+    /**
+     * Cache the images are loaded through
+     */
+    private final ImageCache cache;
+
+    /**
+     * Maximum number of concurrently loading images
+     */
+    private final int maxConcurrentLoads;
+
+    /**
+     * Waiting requests, highest priority first, then in order of submission
+     */
+    private final PriorityQueue<ImageLoadRequest> queue = new PriorityQueue<>(
+        Comparator.<ImageLoadRequest, Priority>comparing(request -> request.priority)
+            .thenComparingLong(request -> request.sequence)
+    );
+
+    /**
+     * Started requests whose image isn't available yet, i.e. still downloading
+     */
+    private final List<ImageLoadRequest> started = new ArrayList<>();
+
+    /**
+     * Number of images currently loading
+     */
+    private int runningLoads = 0;
+
+    /**
+     * Counter for the order of submission
+     */
+    private long sequence = 0;
+
+    /**
+     * No loads are started before this time in System.nanoTime(), because the decoder was busy
+     */
+    private long pausedUntil = System.nanoTime();
+
+    /**
+     * Constructor
+     * @param cache              Cache the images are loaded through
+     * @param maxConcurrentLoads Maximum number of concurrently loading images
+     */
+    public ImageLoadScheduler(ImageCache cache, int maxConcurrentLoads)
+    {
+        this.cache = cache;
+        this.maxConcurrentLoads = maxConcurrentLoads;
+    }
+
+    /**
+     * Returns the shared instance, loading through the shared ImageCache
+     * @return The shared scheduler
+     */
+    public static synchronized ImageLoadScheduler getInstance()
+    {
+        if (instance == null) {
+            instance = new ImageLoadScheduler(ImageCache.getInstance(), DEFAULT_MAX_CONCURRENT_LOADS);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Queues an image load
+     * @param group    Owner of the request, i.e. a skin, see cancelGroup()
+     * @param url      URL of the image
+     * @param width    Requested width
+     * @param height   Requested height
+     * @param priority Initial priority
+     * @return The request, its future completes once the load started
+     */
+    public synchronized ImageLoadRequest submit(Object group, String url, int width, int height, Priority priority)
+    {
+        ImageLoadRequest request = new ImageLoadRequest(this, group, url, width, height, priority, sequence++);
+
+        // Nothing to load, no need to wait for a free slot. A larger image in memory is just as good.
+        Image cached = cache.getAtLeast(url, width, height);
+        if (cached != null) {
+            request.getImage().complete(cached);
+            return request;
+        }
+
+        queue.add(request);
+        startLoads();
+
+        return request;
+    }
+
+    /**
+     * Cancels all requests of an owner, i.e. because a new search made them obsolete. Queued ones are removed,
+     * started ones stop downloading unless other requests wait for the same image.
+     * @param group Owner of the requests
+     */
+    public synchronized void cancelGroup(Object group)
+    {
+        List<ImageLoadRequest> cancelled = new ArrayList<>();
+
+        queue.removeIf(request -> {
+            if (request.group == group) {
+                cancelled.add(request);
+                return true;
+            }
+
+            return false;
+        });
+
+        for (ImageLoadRequest request : cancelled) {
+            request.getImage().cancel(false);
+        }
+
+        cancelled.clear();
+        started.removeIf(request -> {
+            if (request.group == group) {
+                cancelled.add(request);
+                return true;
+            }
+
+            return false;
+        });
+
+        for (ImageLoadRequest request : cancelled) {
+            request.load.cancel(false);
+        }
+    }
+
+    /**
+     * Number of requests waiting for a free slot
+     * @return Number of queued requests
+     */
+    public synchronized int getQueuedLoads()
+    {
+        return queue.size();
+    }
+
+    /**
+     * Changes the priority of a queued request
+     * @param request  The request
+     * @param priority The new priority
+     */
+    synchronized void reprioritize(ImageLoadRequest request, Priority priority)
+    {
+        // The queue only sorts on insertion, so take it out and put it back in
+        if (queue.remove(request)) {
+            request.priority = priority;
+            queue.add(request);
+        } else {
+            request.priority = priority;
+        }
+    }
+
+    /**
+     * Removes a single request from the queue, or stops its download if it already started, see cancelGroup()
+     * @param request The request
+     */
+    synchronized void cancel(ImageLoadRequest request)
+    {
+        if (queue.remove(request)) {
+            request.getImage().cancel(false);
+        } else if (started.remove(request)) {
+            request.load.cancel(false);
+        }
+    }
+
+    /**
+     * Starts queued loads as long as there are free slots
+     */
+    private void startLoads()
+    {
+        // The decoder is busy, a delayed startLoads() picks the queue up again, see pause()
+        if (System.nanoTime() - pausedUntil < 0) {
+            return;
+        }
+
+        while (runningLoads < maxConcurrentLoads && !queue.isEmpty()) {
+            ImageLoadRequest request = queue.poll();
+            runningLoads++;
+
+            AtomicBoolean released = new AtomicBoolean(false);
+            Runnable release = () -> {
+                if (released.compareAndSet(false, true)) {
+                    synchronized (this) {
+                        runningLoads--;
+                        startLoads();
+                    }
+                }
+            };
+
+            CompletableFuture<Image> load = cache.load(request.url, request.width, request.height);
+            request.load = load;
+            started.add(request);
+
+            // A cancelled load fails with a CancellationException, which cancels the request's future as well
+            load.whenComplete((image, e) -> {
+                synchronized (this) {
+                    started.remove(request);
+
+                    // Not failed, only too early. Keep the request waiting instead of falling back to JavaFX's loader.
+                    if (isDecoderBusy(e) && !request.getImage().isDone()) {
+                        request.load = null;
+                        queue.add(request);
+                        pause();
+                    }
+                }
+
+                if (isDecoderBusy(e)) {
+                    release.run();
+                    return;
+                }
+
+                if (e != null) {
+                    request.getImage().completeExceptionally(e);
+                    release.run();
+                    return;
+                }
+
+                request.getImage().complete(image);
+                releaseWhenLoaded(image, release);
+            });
+        }
+    }
+
+    /**
+     * Stops starting loads for a moment and schedules starting them again afterwards
+     */
+    private void pause()
+    {
+        pausedUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DECODER_BUSY_PAUSE_MILLIS);
+
+        CompletableFuture.delayedExecutor(DECODER_BUSY_PAUSE_MILLIS, TimeUnit.MILLISECONDS).execute(() -> {
+            synchronized (this) {
+                startLoads();
+            }
+        });
+    }
+
+    /**
+     * Determine if a load failed only because the decoder had no room for it
+     * @param e Failure of the load, may be null
+     * @return True if the decoder was busy
+     */
+    private static boolean isDecoderBusy(Throwable e)
+    {
+        Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+
+        return cause instanceof DecoderBusyException;
+    }
+
+    /**
+     * Frees the slot of a load once its image finished loading, or failed to. Must be called on the FX application
+     * thread, which fires the listeners added here, see ImageCache.load().
+     * @param image   The image
+     * @param release Frees the slot, may be called multiple times
+     */
+    private static void releaseWhenLoaded(Image image, Runnable release)
+    {
+        ChangeListener<Number> progressListener = new ChangeListener<Number>() {
+            @Override
+            public void changed(ObservableValue<? extends Number> observable, Number oldValue, Number progress)
+            {
+                if (progress.doubleValue() >= 1.0) {
+                    image.progressProperty().removeListener(this);
+                    release.run();
+                }
+            }
+        };
+
+        image.progressProperty().addListener(progressListener);
+        image.errorProperty().addListener((observable, oldValue, isError) -> {
+            if (isError) {
+                release.run();
+            }
+        });
+
+        // Might have finished before the listeners were added, i.e. read from disk
+        if (image.getProgress() >= 1.0 || image.isError()) {
+            image.progressProperty().removeListener(progressListener);
+            release.run();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package ImageSearchFX.ImageLoader;
+
+import javafx.beans.InvalidationListener;
+import javafx.beans.value.ChangeListener;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.stage.Window;
+
+/**
+ * Follows the output scale of the screen a node is shown on, see SizeBuckets.outputScaleOf(). Notices when the node
+ * is added to another scene, the scene to another window, or the window is moved to a screen with another scale.
+ * Only to be used on the JavaFX application thread.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public final class OutputScaleWatcher
+{
+    /**
+     * Node whose output scale is followed
+     */
+    private final Node node;
+
+    /**
+     * Called whenever the output scale may have changed
+     */
+    private final Runnable onChange;
+
+    /**
+     * Follows the scene the node is shown in
+     */
+    private final ChangeListener<Scene> sceneListener = (observable, oldScene, newScene) -> {
+        watchScene(newScene);
+        changed();
+    };
+
+    /**
+     * Follows the window the node's scene is shown in
+     */
+    private final ChangeListener<Window> windowListener = (observable, oldWindow, newWindow) -> {
+        watchWindow(newWindow);
+        changed();
+    };
+
+    /**
+     * Notices the window being moved to a screen with another output scale
+     */
+    private final InvalidationListener outputScaleListener = observable -> changed();
+
+    /**
+     * Scene windowListener is attached to, null if none
+     */
+    private Scene watchedScene;
+
+    /**
+     * Window outputScaleListener is attached to, null if none
+     */
+    private Window watchedWindow;
+
+    /**
+     * Starts following the output scale of a node
+     * @param node     The node
+     * @param onChange Called whenever the output scale may have changed
+     */
+    public OutputScaleWatcher(Node node, Runnable onChange)
+    {
+        this.node = node;
+        this.onChange = onChange;
+
+        node.sceneProperty().addListener(sceneListener);
+        watchScene(node.getScene());
+    }
+
+    /**
+     * Stops following the output scale, onChange isn't called anymore
+     */
+    public void dispose()
+    {
+        node.sceneProperty().removeListener(sceneListener);
+        watchScene(null);
+    }
+
+    /**
+     * Notifies about a possible change of the output scale
+     */
+    private void changed()
+    {
+        onChange.run();
+    }
+
+    /**
+     * Follows the window a scene is shown in, and windows it's shown in later. Stops following the previous scene
+     * and its window.
+     * @param scene The scene, may be null
+     */
+    private void watchScene(Scene scene)
+    {
+        if (watchedScene != null) {
+            watchedScene.windowProperty().removeListener(windowListener);
+        }
+
+        watchedScene = scene;
+
+        if (scene != null) {
+            scene.windowProperty().addListener(windowListener);
+        }
+
+        watchWindow(scene == null ? null : scene.getWindow());
+    }
+
+    /**
+     * Follows the output scale of a window in both directions, stops following the previous one
+     * @param window The window, may be null
+     */
+    private void watchWindow(Window window)
+    {
+        if (watchedWindow != null) {
+            watchedWindow.outputScaleXProperty().removeListener(outputScaleListener);
+            watchedWindow.outputScaleYProperty().removeListener(outputScaleListener);
+        }
+
+        watchedWindow = window;
+
+        if (window != null) {
+            window.outputScaleXProperty().addListener(outputScaleListener);
+            window.outputScaleYProperty().addListener(outputScaleListener);
+        }
+    }
+}
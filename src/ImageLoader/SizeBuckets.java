@@ -0,0 +1,76 @@
+package ImageSearchFX.ImageLoader;
+
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.stage.Window;
+
+/**
+ * Rounds the sizes images are requested with up to a few fixed buckets. Tiles change size with every pixel the
+ * control is resized, without buckets every resize would be a new size to download and decode, and cached images
+ * of a slightly different size could never be reused.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public final class SizeBuckets
+{
+    /**
+     * Bucket sizes in pixels, powers of two and the steps halfway between them
+     */
+    private static final int[] BUCKETS = {64, 96, 128, 192, 256, 384, 512, 768, 1024, 1536, 2048, 3072, 4096};
+
+    /**
+     * Tiles are zoomed on hover, images should still be sharp then
+     */
+    public static final double HOVER_SCALE = 1.2;
+
+    /**
+     * Utility class
+     */
+    private SizeBuckets()
+    {
+    }
+
+    /**
+     * Returns the smallest bucket that holds a size
+     * @param pixels Size in physical pixels
+     * @return The bucket, the largest one for sizes beyond it
+     */
+    public static int bucketFor(double pixels)
+    {
+        for (int bucket : BUCKETS) {
+            if (bucket >= pixels) {
+                return bucket;
+            }
+        }
+
+        return BUCKETS[BUCKETS.length - 1];
+    }
+
+    /**
+     * Returns the bucket for the images of a tile, including the hover zoom
+     * @param tileSize    Size of the tile in layout pixels
+     * @param outputScale Output scale of the screen, see outputScaleOf()
+     * @return The bucket
+     */
+    public static int forTile(double tileSize, double outputScale)
+    {
+        return bucketFor(tileSize * outputScale * HOVER_SCALE);
+    }
+
+    /**
+     * Returns the output scale of the screen a node is shown on, 2 on most HiDPI screens
+     * @param node The node
+     * @return The scale, 1 if the node isn't shown yet
+     */
+    public static double outputScaleOf(Node node)
+    {
+        Scene scene = node.getScene();
+        Window window = scene == null ? null : scene.getWindow();
+
+        if (window == null) {
+            return 1;
+        }
+
+        return Math.max(window.getOutputScaleX(), window.getOutputScaleY());
+    }
+}
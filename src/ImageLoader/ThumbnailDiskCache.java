@@ -0,0 +1,420 @@
+package ImageSearchFX.ImageLoader;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritableImage;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Persistent cache of tile thumbnails, so images seen in an earlier session don't need to be downloaded again.
+ *
+ * Thumbnails are stored as PNG files, named after a hash of URL and size. Thumbnails are small, so decoding one is
+ * cheap, and compressed they take a fraction of the space raw pixels would. The cache is bounded in
+ * size and evicts least recently used thumbnails. Their order is kept in memory and written to an index file every
+ * now and then, so it survives restarts without every cache hit writing to disk.
+ *
+ * All file access happens on a single background thread.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class ThumbnailDiskCache
+{
+    /**
+     * Default size limit, 256 MiB
+     */
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    /**
+     * Name of the index file
+     */
+    private static final String INDEX_FILE = "index";
+
+    /**
+     * Extension of thumbnail files
+     */
+    private static final String EXTENSION = ".png";
+
+    /**
+     * Time between two writes of the index, if it changed
+     */
+    private static final long INDEX_WRITE_INTERVAL_SECONDS = 30;
+
+    /**
+     * Directory of the cache
+     */
+    private final Path directory;
+
+    /**
+     * Size limit in bytes
+     */
+    private final long maxBytes;
+
+    /**
+     * File names and sizes in access order, eldest first. Only accessed on the IO thread.
+     */
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(256, 0.75f, true);
+
+    /**
+     * Size of all thumbnails in bytes. Only accessed on the IO thread.
+     */
+    private long currentBytes = 0;
+
+    /**
+     * Flag if the index changed since it was last written. Only accessed on the IO thread.
+     */
+    private boolean indexDirty = false;
+
+    /**
+     * Single thread for all file access, so index and files are never out of sync
+     */
+    private final ScheduledExecutorService ioExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "thumbnail-disk-cache");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    /**
+     * Constructor, loads the index in the background and writes it periodically
+     * @param directory Directory of the cache, created if missing
+     * @param maxBytes  Size limit in bytes
+     */
+    public ThumbnailDiskCache(Path directory, long maxBytes)
+    {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        ioExecutor.execute(this::loadIndex);
+        ioExecutor.scheduleWithFixedDelay(
+            this::writeIndex,
+            INDEX_WRITE_INTERVAL_SECONDS,
+            INDEX_WRITE_INTERVAL_SECONDS,
+            TimeUnit.SECONDS
+        );
+    }
+
+    /**
+     * Returns the default directory, .imagesearchfx/thumbnails in the user's home
+     * @return The directory
+     */
+    public static Path getDefaultDirectory()
+    {
+        return Paths.get(System.getProperty("user.home"), ".imagesearchfx", "thumbnails");
+    }
+
+    /**
+     * Reads a thumbnail
+     * @param url    URL of the image
+     * @param width  Requested width of the thumbnail, it may be narrower to keep the aspect ratio
+     * @param height Requested height of the thumbnail, it may be lower to keep the aspect ratio
+     * @return Future of the thumbnail, completes with null if it isn't cached
+     */
+    public CompletableFuture<Image> read(String url, int width, int height)
+    {
+        String name = fileName(url, width, height);
+
+        return CompletableFuture.supplyAsync(() -> {
+            if (index.get(name) == null) { // Also marks the thumbnail as recently used
+                return null;
+            }
+
+            // The new order is written with the next periodic index write, not on every hit
+            indexDirty = true;
+
+            try {
+                // Read into the heap, a mapped file couldn't be deleted on eviction on some platforms
+                BufferedImage stored = ImageIO.read(new ByteArrayInputStream(Files.readAllBytes(directory.resolve(name))));
+
+                if (stored == null || stored.getWidth() > width || stored.getHeight() > height) {
+                    throw new IOException("Corrupt thumbnail " + name);
+                }
+
+                int storedWidth = stored.getWidth();
+                int storedHeight = stored.getHeight();
+                int[] pixels = stored.getRGB(0, 0, storedWidth, storedHeight, null, 0, storedWidth);
+
+                WritableImage image = new WritableImage(storedWidth, storedHeight);
+                image.getPixelWriter().setPixels(
+                    0, 0, storedWidth, storedHeight,
+                    PixelFormat.getIntArgbInstance(),
+                    pixels,
+                    0,
+                    storedWidth
+                );
+
+                return (Image) image;
+            } catch (IOException e) {
+                forget(name);
+                return null;
+            }
+        }, ioExecutor);
+    }
+
+    /**
+     * Stores a fully loaded thumbnail in the background
+     * @param url             URL of the image
+     * @param requestedWidth  Width the thumbnail was requested with, it's read with the same one
+     * @param requestedHeight Height the thumbnail was requested with, it's read with the same one
+     * @param image           The loaded thumbnail
+     */
+    public void write(String url, int requestedWidth, int requestedHeight, Image image)
+    {
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        PixelReader pixelReader = image.getPixelReader();
+
+        if (pixelReader == null || width <= 0 || height <= 0) {
+            return;
+        }
+
+        String name = fileName(url, requestedWidth, requestedHeight);
+
+        ioExecutor.execute(() -> {
+            if (index.containsKey(name)) {
+                return;
+            }
+
+            BufferedImage pixels = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            int[] argb = new int[width * height];
+            pixelReader.getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), argb, 0, width);
+            pixels.setRGB(0, 0, width, height, argb, 0, width);
+
+            Path file = directory.resolve(name);
+            Path temporary = directory.resolve(name + ".tmp");
+            long size;
+
+            try {
+                ByteArrayOutputStream png = new ByteArrayOutputStream();
+
+                if (!ImageIO.write(pixels, "png", png)) {
+                    return;
+                }
+
+                Files.write(temporary, png.toByteArray());
+                size = png.size();
+            } catch (IOException e) {
+                return; // Not cached, it will just be downloaded again next time
+            }
+
+            try {
+                // Never leave half written thumbnails behind if the app is closed while writing
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                return;
+            }
+
+            index.put(name, size);
+            currentBytes += size;
+            indexDirty = true;
+
+            if (evict()) {
+                writeIndex();
+            }
+        });
+    }
+
+    /**
+     * Deletes all thumbnails
+     */
+    public void clear()
+    {
+        ioExecutor.execute(() -> {
+            for (String name : new ArrayList<>(index.keySet())) {
+                forget(name);
+            }
+
+            writeIndex();
+        });
+    }
+
+    /**
+     * Writes the index and stops the background thread. Without it, at most the access order of the last
+     * INDEX_WRITE_INTERVAL_SECONDS is lost.
+     */
+    public void close()
+    {
+        // Queued after all pending writes, so it includes them
+        ioExecutor.execute(this::writeIndex);
+        ioExecutor.shutdown();
+    }
+
+    /**
+     * Deletes least recently used thumbnails until the size limit is met
+     * @return True if any were deleted
+     */
+    private boolean evict()
+    {
+        Iterator<Map.Entry<String, Long>> iterator = index.entrySet().iterator();
+        boolean evicted = false;
+
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            currentBytes -= eldest.getValue();
+            evicted = true;
+            indexDirty = true;
+
+            try {
+                Files.deleteIfExists(directory.resolve(eldest.getKey()));
+            } catch (IOException e) {
+                // Will be overwritten once the thumbnail is cached again
+            }
+        }
+
+        return evicted;
+    }
+
+    /**
+     * Removes a thumbnail from the index and deletes its file
+     * @param name File name of the thumbnail
+     */
+    private void forget(String name)
+    {
+        Long size = index.remove(name);
+
+        if (size != null) {
+            currentBytes -= size;
+            indexDirty = true;
+        }
+
+        try {
+            Files.deleteIfExists(directory.resolve(name));
+        } catch (IOException e) {
+            // Nothing to do, it's not in the index anymore
+        }
+    }
+
+    /**
+     * Loads the index, eldest thumbnails first. Thumbnails missing in it, i.e. written after it was last written, are
+     * added as the most recently used ones, by file modification date.
+     */
+    private void loadIndex()
+    {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            return;
+        }
+
+        Path indexFile = directory.resolve(INDEX_FILE);
+
+        try {
+            if (Files.exists(indexFile)) {
+                for (String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
+                    String[] parts = line.split(" ");
+
+                    if (parts.length == 2 && Files.exists(directory.resolve(parts[0]))) {
+                        long size = Long.parseLong(parts[1]);
+                        index.put(parts[0], size);
+                        currentBytes += size;
+                    }
+                }
+            }
+
+            List<Path> files = new ArrayList<>();
+
+            try (Stream<Path> stream = Files.list(directory)) {
+                stream.filter(path -> path.getFileName().toString().endsWith(EXTENSION))
+                    .filter(path -> !index.containsKey(path.getFileName().toString()))
+                    .forEach(files::add);
+            }
+
+            files.sort((a, b) -> Long.compare(a.toFile().lastModified(), b.toFile().lastModified()));
+
+            for (Path file : files) {
+                long size = Files.size(file);
+                index.put(file.getFileName().toString(), size);
+                currentBytes += size;
+                indexDirty = true;
+            }
+        } catch (IOException | NumberFormatException e) {
+            // A broken index only means the order of thumbnails is lost, start over
+            index.clear();
+            currentBytes = 0;
+        }
+
+        evict();
+    }
+
+    /**
+     * Writes the index, eldest thumbnails first
+     */
+    private void writeIndex()
+    {
+        if (!indexDirty) {
+            return;
+        }
+
+        indexDirty = false;
+
+        Path temporary = directory.resolve(INDEX_FILE + ".tmp");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Long> entry : index.entrySet()) {
+                writer.write(entry.getKey() + " " + entry.getValue());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            return;
+        }
+
+        try {
+            Files.move(
+                temporary,
+                directory.resolve(INDEX_FILE),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE
+            );
+        } catch (IOException e) {
+            // The old index is still there, only the most recent changes are lost
+        }
+    }
+
+    /**
+     * Builds the file name of a thumbnail, a hash of URL and size
+     * @param url    URL of the image
+     * @param width  Requested width of the thumbnail
+     * @param height Requested height of the thumbnail
+     * @return The file name
+     */
+    private static String fileName(String url, int width, int height)
+    {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((url + "@" + width + "x" + height).getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder name = new StringBuilder();
+            for (byte b : hash) {
+                name.append(String.format("%02x", b));
+            }
+
+            return name.append(EXTENSION).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is always available", e);
+        }
+    }
+}
@@ -1,14 +1,22 @@
 package ImageSearchFX;
 
-import ch.fhnw.cuie.ImageSearchFX.ImageSearcher.ImageSearcherInterface;
-import ch.fhnw.cuie.ImageSearchFX.TileSkin.TileSkin;
+import ImageSearchFX.ImageSearcher.ImagePage;
+import ImageSearchFX.ImageSearcher.ImageResult;
+import ImageSearchFX.ImageSearcher.ImageSearcherInterface;
+import ImageSearchFX.TileSkin.TileSkin;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.beans.property.*;
 import javafx.scene.control.Control;
 import javafx.scene.control.Skin;
+import javafx.util.Duration;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Image search control: Finding images by a given searchterm via a given searcher implementation
@@ -18,6 +26,14 @@ import java.util.concurrent.CompletableFuture;
  *  - imageUrlProperty: Changes when a new image is chosen from a list of found images
  *  - searchTermProperty: Change to trigger a new search
  *
+ *  URLs are published on imageListProperty while the search is still running, each time with all URLs found so far.
+ *
+ *  With infiniteScrollProperty set, a search only fetches the first page of `limit` images. Skins call loadNextPage()
+ *  when the user scrolls close to the end, which appends the next page of the provider to imageListProperty.
+ *
+ *  Searches are debounced: A search is only performed once searchTermProperty didn't change for searchDelayProperty,
+ *  so typing a term doesn't fire a request per keystroke. Terms shorter than minSearchTermLengthProperty are ignored.
+ *
  *  For the Buildings app it is recommended, that the name field of the building is bound to searchTermProperty
  *  and that, as soon as the imageUrlProperty changes, also the respective image is changed. See DemoPane for
  *  working example.
@@ -49,7 +65,17 @@ public class ImageSearchControl extends Control
     /**
      * Future for async requests
      */
-    private CompletableFuture<List<String>> future;
+    private CompletableFuture<?> future;
+
+    /**
+     * URLs found by the current search so far
+     */
+    private SearchProgress currentSearch = new SearchProgress(null);
+
+    /**
+     * True while the current search still delivers URLs, so skins know if more are to come
+     */
+    private BooleanProperty loadingResults = new SimpleBooleanProperty(false);
 
     /**
      * Simple boolean property that is used as a trigger for searching behaviour on skin side
@@ -57,10 +83,36 @@ public class ImageSearchControl extends Control
     private BooleanProperty isSearching = new SimpleBooleanProperty(false);
 
     /**
-     * Maximum number of images shown
+     * Quiet period after the last change of the search term before a search is performed, zero searches immediately
+     */
+    private ObjectProperty<Duration> searchDelayProperty = new SimpleObjectProperty<>(Duration.millis(250));
+
+    /**
+     * Flag if results are fetched page by page while scrolling instead of `limit` images once
+     */
+    private BooleanProperty infiniteScrollProperty = new SimpleBooleanProperty(false);
+
+    /**
+     * Minimum length of a (trimmed) search term to trigger a search
+     */
+    private IntegerProperty minSearchTermLengthProperty = new SimpleIntegerProperty(1);
+
+    /**
+     * Timer for the quiet period, restarted with every change of the search term
+     */
+    private PauseTransition searchDelayTimer;
+
+    /**
+     * Maximum number of images shown, or the size of a page with infinite scrolling
      */
     private int limit;
 
+    /**
+     * Number of pages in a row that may add no new images before loading further pages is given up. Providers
+     * filter results, i.e. Wikipedia may return a page of sound files only.
+     */
+    private static int MAX_EMPTY_PAGES = 3;
+
     /**
      * Maximum number of images per row
      */
@@ -89,6 +141,9 @@ public class ImageSearchControl extends Control
     private void initializeSelf()
     {
         getStyleClass().add("image-search-control");
+
+        searchDelayTimer = new PauseTransition();
+        searchDelayTimer.setOnFinished(e -> performSearch(getSearchTerm()));
     }
 
     /**
@@ -96,11 +151,31 @@ public class ImageSearchControl extends Control
      */
     private void addValueChangeListeners()
     {
-        searchTermProperty.addListener(((observable, oldValue, newValue) -> {
-            if (newValue.length() > 0) {
-                performSearch(newValue);
-            }
-        }));
+        searchTermProperty.addListener(((observable, oldValue, newValue) -> scheduleSearch(newValue)));
+    }
+
+    /**
+     * (Re)starts the quiet period for a changed search term, the search is performed once it's over
+     * @param searchTerm The new searchterm
+     */
+    private void scheduleSearch(String searchTerm)
+    {
+        searchDelayTimer.stop();
+
+        // Too short terms don't trigger anything, but still stop the pending search of the previous term
+        if (searchTerm == null || searchTerm.trim().length() < Math.max(1, getMinSearchTermLength())) {
+            return;
+        }
+
+        Duration delay = getSearchDelay();
+
+        if (delay == null || delay.lessThanOrEqualTo(Duration.ZERO)) {
+            performSearch(searchTerm);
+            return;
+        }
+
+        searchDelayTimer.setDuration(delay);
+        searchDelayTimer.playFromStart();
     }
 
     /**
@@ -117,11 +192,145 @@ public class ImageSearchControl extends Control
         isSearchingProperty().setValue(true);
         isSearchingProperty().setValue(false);
 
-        future = imageSearcher.getUrlsBySearchTerm(searchTerm, limit);
-        future.thenAcceptAsync((list) -> {
+        // URLs are published as they arrive, so the skin can start loading images before the search is done
+        SearchProgress progress = new SearchProgress(searchTerm);
+        currentSearch = progress;
+        loadingResults.setValue(true);
+
+        if (isInfiniteScroll()) {
+            loadPage(progress, null);
+            return;
+        }
+
+        CompletableFuture<List<String>> search = imageSearcher.getUrlsBySearchTerm(searchTerm, limit, urlConsumer(progress));
+        future = search;
+        search.whenCompleteAsync((list, e) -> {
+            if (progress != currentSearch) {
+                return;
+            }
+
+            if (list != null) {
+                progress.complete(list);
+                publish(progress);
+            }
+
+            loadingResults.setValue(false);
+        }, Platform::runLater);
+    }
+
+    /**
+     * Loads the next page of the current search, called by skins when the user scrolls close to the end of the
+     * images. Does nothing without infinite scrolling, while a page is still loading or after the last page.
+     */
+    public void loadNextPage()
+    {
+        SearchProgress progress = currentSearch;
+
+        if (!isInfiniteScroll() || isLoadingResults() || progress.nextCursor == null) {
+            return;
+        }
+
+        loadingResults.setValue(true);
+        loadPage(progress, progress.nextCursor);
+    }
+
+    /**
+     * Flag if the current search has more pages to load, see loadNextPage()
+     * @return True if it has
+     */
+    public boolean hasMoreResults()
+    {
+        return isInfiniteScroll() && currentSearch.nextCursor != null;
+    }
+
+    /**
+     * Fetches a page and appends it to the URLs of a search
+     * @param progress The search
+     * @param cursor   Cursor of the page, null for the first one
+     */
+    private void loadPage(SearchProgress progress, String cursor)
+    {
+        progress.startPage();
+
+        CompletableFuture<ImagePage> page = imageSearcher.getPage(progress.searchTerm, limit, cursor, urlConsumer(progress));
+        future = page;
+        page.whenCompleteAsync((result, e) -> {
+            if (progress != currentSearch) {
+                return;
+            }
+
+            // Don't retry failing pages on every scroll event, a new search starts over anyway
+            progress.nextCursor = result == null ? null : result.getNextCursor();
+
+            if (result != null) {
+                boolean added = progress.append(result.getUrls());
+                publish(progress);
+
+                progress.emptyPages = added ? 0 : progress.emptyPages + 1;
+            }
+
+            loadingResults.setValue(false);
+
+            // A page without new images doesn't change the skin, so it wouldn't ask for the next one
+            if (progress.emptyPages > 0 && progress.emptyPages < MAX_EMPTY_PAGES) {
+                loadNextPage();
+            }
+        }, Platform::runLater);
+    }
+
+    /**
+     * Creates the consumer that collects the URLs of a search as they're found and queues publishing them
+     * @param progress The search
+     * @return The consumer
+     */
+    private Consumer<String> urlConsumer(SearchProgress progress)
+    {
+        return url -> {
+            if (progress.add(url)) {
+                Platform.runLater(() -> publish(progress));
+            }
+        };
+    }
+
+    /**
+     * Determine if a new image list only appends URLs to the previous one, as happens while a search is still
+     * delivering URLs. Skins only need to load the appended images then.
+     * @param previous The previous list
+     * @param next     The new list
+     * @return True if next starts with all of previous
+     */
+    public static boolean extendsList(List<String> previous, List<String> next)
+    {
+        return previous != null
+            && next != null
+            && !previous.isEmpty()
+            && next.size() >= previous.size()
+            && next.subList(0, previous.size()).equals(previous);
+    }
+
+    /**
+     * Publishes the URLs a search found so far on imageListProperty. Runs on the JavaFX application thread.
+     * @param progress The search
+     */
+    private void publish(SearchProgress progress)
+    {
+        // Superseded by a newer search
+        if (progress != currentSearch) {
+            return;
+        }
+
+        List<String> urls = progress.takeSnapshot();
+
+        if (!progress.published) {
+            progress.published = true;
             imageListProperty.setValue(new ArrayList<>()); // Empty first to trigger change, even if list hasn't changed
-            imageListProperty.setValue(list);
-        });
+            imageListProperty.setValue(urls);
+            return;
+        }
+
+        if (!urls.equals(imageListProperty.getValue())) {
+            imageListProperty.setValue(urls);
+        }
     }
 
     @Override
@@ -129,6 +338,24 @@ public class ImageSearchControl extends Control
         return new TileSkin(this, limit, MAX_PER_ROW);
     }
 
+    /**
+     * Returns the maximum number of images shown
+     * @return The limit
+     */
+    public int getLimit()
+    {
+        return limit;
+    }
+
+    /**
+     * Returns the maximum number of images per row
+     * @return Images per row
+     */
+    public int getMaxPerRow()
+    {
+        return MAX_PER_ROW;
+    }
+
     /**
      * Returns the current image URL
      * @return Image URL as String
@@ -147,6 +374,26 @@ public class ImageSearchControl extends Control
         return imageUrlProperty;
     }
 
+    /**
+     * Returns everything the searcher knows about an image of the list, i.e. its size and variants
+     * @param url URL of the image, as found in the image list
+     * @return The result, only holds the URL if the searcher doesn't know more
+     */
+    public ImageResult getImageResult(String url)
+    {
+        return imageSearcher.getImageResult(url);
+    }
+
+    /**
+     * Chooses an image of the list, called by the skins when a tile is clicked. The tiles may show thumbnails,
+     * the imageUrlProperty gets the URL of the full size image.
+     * @param url URL of the chosen image, as found in the image list
+     */
+    public void selectImage(String url)
+    {
+        imageUrlProperty.setValue(url == null ? null : imageSearcher.getOriginalUrl(url));
+    }
+
     /**
      * Returns the current search term
      * @return Search term as String
@@ -174,6 +421,105 @@ public class ImageSearchControl extends Control
         return imageListProperty;
     }
 
+    /**
+     * Returns the quiet period before a search is performed
+     * @return The search delay
+     */
+    public Duration getSearchDelay()
+    {
+        return searchDelayProperty.getValue();
+    }
+
+    /**
+     * Sets the quiet period before a search is performed, Duration.ZERO disables debouncing
+     * @param searchDelay The search delay
+     */
+    public void setSearchDelay(Duration searchDelay)
+    {
+        searchDelayProperty.setValue(searchDelay);
+    }
+
+    /**
+     * Returns the searchDelayProperty
+     * @return Search delay property
+     */
+    public ObjectProperty<Duration> searchDelayProperty()
+    {
+        return searchDelayProperty;
+    }
+
+    /**
+     * Flag if results are fetched page by page while scrolling
+     * @return The properties value
+     */
+    public boolean isInfiniteScroll()
+    {
+        return infiniteScrollProperty.get();
+    }
+
+    /**
+     * Enables or disables fetching results page by page while scrolling, applies to the next search
+     * @param infiniteScroll The new value
+     */
+    public void setInfiniteScroll(boolean infiniteScroll)
+    {
+        infiniteScrollProperty.set(infiniteScroll);
+    }
+
+    /**
+     * Returns the infiniteScrollProperty
+     * @return Infinite scroll property
+     */
+    public BooleanProperty infiniteScrollProperty()
+    {
+        return infiniteScrollProperty;
+    }
+
+    /**
+     * Returns the minimum length of a search term
+     * @return Minimum search term length
+     */
+    public int getMinSearchTermLength()
+    {
+        return minSearchTermLengthProperty.get();
+    }
+
+    /**
+     * Sets the minimum length of a search term
+     * @param minSearchTermLength Minimum search term length
+     */
+    public void setMinSearchTermLength(int minSearchTermLength)
+    {
+        minSearchTermLengthProperty.set(minSearchTermLength);
+    }
+
+    /**
+     * Returns the minSearchTermLengthProperty
+     * @return Minimum search term length property
+     */
+    public IntegerProperty minSearchTermLengthProperty()
+    {
+        return minSearchTermLengthProperty;
+    }
+
+    /**
+     * Flag if the current search still delivers URLs
+     * @return The properties value
+     */
+    public boolean isLoadingResults()
+    {
+        return loadingResults.get();
+    }
+
+    /**
+     * Property that is true while the current search still delivers URLs
+     * @return The property
+     */
+    public BooleanProperty loadingResultsProperty()
+    {
+        return loadingResults;
+    }
+
     /**
      * isSearching flag
      * @return The properties value
@@ -191,4 +537,133 @@ public class ImageSearchControl extends Control
     {
         return isSearching;
     }
+
+    /**
+     * URLs found by a single search so far. Filled by the searcher on any thread, published on the JavaFX
+     * application thread. Publishing is coalesced, so a burst of URLs only changes imageListProperty once.
+     */
+    private static class SearchProgress
+    {
+        /**
+         * The term searched for
+         */
+        private final String searchTerm;
+
+        /**
+         * Cursor of the next page, null without infinite scrolling or after the last page. Only accessed on the
+         * JavaFX application thread.
+         */
+        private String nextCursor;
+
+        /**
+         * Number of pages in a row that added no new URLs, only accessed on the JavaFX application thread
+         */
+        private int emptyPages = 0;
+
+        /**
+         * Number of URLs before the page that is currently fetched
+         */
+        private int pageStart = 0;
+
+        /**
+         * URLs in order of arrival, without duplicates
+         */
+        private final List<String> urls = new ArrayList<>();
+
+        /**
+         * Same URLs, for quick duplicate checks
+         */
+        private final Set<String> seen = new HashSet<>();
+
+        /**
+         * Flag if publishing is already queued on the JavaFX application thread
+         */
+        private boolean publishScheduled = false;
+
+        /**
+         * Flag if anything was published yet, only accessed on the JavaFX application thread
+         */
+        private boolean published = false;
+
+        /**
+         * Constructor
+         * @param searchTerm The term searched for
+         */
+        SearchProgress(String searchTerm)
+        {
+            this.searchTerm = searchTerm;
+        }
+
+        /**
+         * Adds a found URL
+         * @param url The URL
+         * @return True if publishing needs to be queued
+         */
+        synchronized boolean add(String url)
+        {
+            if (!seen.add(url)) {
+                return false;
+            }
+
+            urls.add(url);
+
+            if (publishScheduled) {
+                return false;
+            }
+
+            publishScheduled = true;
+            return true;
+        }
+
+        /**
+         * Replaces the URLs with the complete result of the search
+         * @param result All found URLs
+         */
+        synchronized void complete(List<String> result)
+        {
+            urls.clear();
+            seen.clear();
+
+            for (String url : result) {
+                if (seen.add(url)) {
+                    urls.add(url);
+                }
+            }
+        }
+
+        /**
+         * Remembers the number of URLs before a page is fetched
+         */
+        synchronized void startPage()
+        {
+            pageStart = urls.size();
+        }
+
+        /**
+         * Adds the complete result of a page, URLs that weren't handed out one by one are appended
+         * @param page All URLs of the page
+         * @return True if the page added any URL to this search, handed out one by one or not
+         */
+        synchronized boolean append(List<String> page)
+        {
+            for (String url : page) {
+                if (seen.add(url)) {
+                    urls.add(url);
+                }
+            }
+
+            return urls.size() > pageStart;
+        }
+
+        /**
+         * Returns a copy of the URLs found so far and allows queueing the next publish
+         * @return The URLs
+         */
+        synchronized List<String> takeSnapshot()
+        {
+            publishScheduled = false;
+
+            return new ArrayList<>(urls);
+        }
+    }
 }
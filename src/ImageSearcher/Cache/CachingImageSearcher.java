@@ -0,0 +1,105 @@
+package ImageSearchFX.ImageSearcher.Cache;
+
+import ImageSearchFX.ImageSearcher.Decorator.AbstractImageSearcherDecorator;
+import ImageSearchFX.ImageSearcher.ImagePage;
+import ImageSearchFX.ImageSearcher.ImageSearcherInterface;
+import ImageSearchFX.ImageSearcher.SearchKey;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Image searcher that answers repeated searches from a SearchResultCache instead of asking the wrapped searcher
+ * again. Useful when searchTermProperty is bound to a field that keeps coming back to the same values.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class CachingImageSearcher extends AbstractImageSearcherDecorator
+{
+    /**
+     * Cache for found URLs
+     */
+    private final SearchResultCache cache;
+
+    /**
+     * Constructor, uses a cache of its own with default size and TTL
+     * @param delegate The searcher to ask on cache misses
+     */
+    public CachingImageSearcher(ImageSearcherInterface delegate)
+    {
+        this(delegate, new SearchResultCache());
+    }
+
+    /**
+     * Constructor
+     * @param delegate The searcher to ask on cache misses
+     * @param cache    Cache to use, may be shared with other CachingImageSearchers
+     */
+    public CachingImageSearcher(ImageSearcherInterface delegate, SearchResultCache cache)
+    {
+        super(delegate);
+        this.cache = cache;
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getUrlsBySearchTerm(String searchTerm, int limit) throws RuntimeException
+    {
+        return getUrlsBySearchTerm(searchTerm, limit, url -> {});
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getUrlsBySearchTerm(
+        String searchTerm,
+        int limit,
+        Consumer<String> urlConsumer
+    ) throws RuntimeException {
+        SearchKey key = SearchKey.of(getProviderName(), searchTerm);
+        List<String> cached = cache.get(key, limit);
+
+        if (cached != null) {
+            cached.forEach(urlConsumer);
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<List<String>> future = delegate.getUrlsBySearchTerm(searchTerm, limit, urlConsumer);
+
+        // Only store successful results, failed or cancelled searches should be retried next time
+        future.thenAccept(urls -> cache.put(key, limit, urls));
+
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<ImagePage> getPage(
+        String searchTerm,
+        int limit,
+        String cursor,
+        Consumer<String> urlConsumer
+    ) throws RuntimeException {
+        CompletableFuture<ImagePage> future = delegate.getPage(searchTerm, limit, cursor, urlConsumer);
+
+        // Pages can't be answered from the cache, since cursors are only known to the provider. A first page without
+        // a next one holds everything the provider has though, which answers searches with any limit.
+        if (cursor == null) {
+            SearchKey key = SearchKey.of(getProviderName(), searchTerm);
+
+            future.thenAccept(page -> {
+                if (!page.hasMore()) {
+                    cache.put(key, limit, page.getUrls(), true);
+                }
+            });
+        }
+
+        return future;
+    }
+
+    /**
+     * Returns the cache used by this searcher
+     * @return The cache
+     */
+    public SearchResultCache getCache()
+    {
+        return cache;
+    }
+}
@@ -0,0 +1,226 @@
+package ImageSearchFX.ImageSearcher.Cache;
+
+import ImageSearchFX.ImageSearcher.SearchKey;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Size bounded cache of search results. Evicts the least recently used entry once full and treats entries older
+ * than the TTL as missing. Can be shared between multiple CachingImageSearchers, entries are keyed by provider.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class SearchResultCache
+{
+    /**
+     * Default maximum number of cached searches
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    /**
+     * Default time to live of a cached search in minutes
+     */
+    public static final long DEFAULT_TTL_MINUTES = 10;
+
+    /**
+     * Maximum number of cached searches
+     */
+    private final int maxEntries;
+
+    /**
+     * Time to live of an entry in nanoseconds
+     */
+    private final long ttlNanos;
+
+    /**
+     * Entries in access order, so the eldest entry is the least recently used one
+     */
+    private final LinkedHashMap<SearchKey, Entry> entries;
+
+    /**
+     * Constructor with default size and TTL
+     */
+    public SearchResultCache()
+    {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Constructor
+     * @param maxEntries Maximum number of cached searches
+     * @param ttl        Time to live of a cached search
+     * @param unit       Unit of ttl
+     */
+    public SearchResultCache(int maxEntries, long ttl, TimeUnit unit)
+    {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1, got " + maxEntries);
+        }
+
+        this.maxEntries = maxEntries;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<SearchKey, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SearchKey, Entry> eldest)
+            {
+                return size() > SearchResultCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns cached URLs for a search, if there's a fresh entry that was fetched with at least the given limit or
+     * holds everything the provider has for the search.
+     * @param key   Key of the search
+     * @param limit Maximum number of URLs needed
+     * @return At most `limit` URLs or null if the cache cannot answer the search
+     */
+    public synchronized List<String> get(SearchKey key, int limit)
+    {
+        Entry entry = entries.get(key);
+
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.isExpired(System.nanoTime(), ttlNanos)) {
+            entries.remove(key);
+            return null;
+        }
+
+        if (!entry.covers(limit)) {
+            return null;
+        }
+
+        return entry.urls.size() > limit
+            ? new ArrayList<>(entry.urls.subList(0, limit))
+            : new ArrayList<>(entry.urls);
+    }
+
+    /**
+     * Stores the result of a search that may have been cut off by its limit, see put() with an exhausted flag
+     * @param key   Key of the search
+     * @param limit Limit the search was performed with
+     * @param urls  Found URLs
+     */
+    public synchronized void put(SearchKey key, int limit, List<String> urls)
+    {
+        put(key, limit, urls, false);
+    }
+
+    /**
+     * Stores the result of a search. An existing fresh entry that answers more searches than the new one is kept,
+     * i.e. one fetched with a higher limit or one that holds everything the provider has.
+     * @param key       Key of the search
+     * @param limit     Limit the search was performed with
+     * @param urls      Found URLs
+     * @param exhausted True if the provider told there are no more results, fewer URLs than the limit alone don't
+     *                  tell that, since parsers drop results they can't use
+     */
+    public synchronized void put(SearchKey key, int limit, List<String> urls, boolean exhausted)
+    {
+        long now = System.nanoTime();
+        Entry existing = entries.get(key);
+
+        if (existing != null && !existing.isExpired(now, ttlNanos)
+                && (existing.exhausted || (!exhausted && existing.limit > limit))) {
+            return;
+        }
+
+        entries.put(key, new Entry(Collections.unmodifiableList(new ArrayList<>(urls)), limit, exhausted, now));
+    }
+
+    /**
+     * Removes a single search from the cache
+     * @param key Key of the search
+     */
+    public synchronized void invalidate(SearchKey key)
+    {
+        entries.remove(key);
+    }
+
+    /**
+     * Removes all entries
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    /**
+     * Number of entries, including expired ones that haven't been looked up since they expired
+     * @return Number of entries
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * A single cached search
+     */
+    private static class Entry
+    {
+        /**
+         * Found URLs
+         */
+        private final List<String> urls;
+
+        /**
+         * Limit the search was performed with
+         */
+        private final int limit;
+
+        /**
+         * Flag if the provider has no more results than these
+         */
+        private final boolean exhausted;
+
+        /**
+         * System.nanoTime() of when this entry was stored
+         */
+        private final long storedAt;
+
+        /**
+         * Constructor
+         * @param urls      Found URLs
+         * @param limit     Limit the search was performed with
+         * @param exhausted Flag if the provider has no more results than these
+         * @param storedAt  System.nanoTime() of when this entry was stored
+         */
+        Entry(List<String> urls, int limit, boolean exhausted, long storedAt)
+        {
+            this.urls = urls;
+            this.limit = limit;
+            this.exhausted = exhausted;
+            this.storedAt = storedAt;
+        }
+
+        /**
+         * Determine if this entry is older than the TTL
+         * @param now      Current System.nanoTime()
+         * @param ttlNanos TTL in nanoseconds
+         * @return True if expired
+         */
+        boolean isExpired(long now, long ttlNanos)
+        {
+            return now - storedAt > ttlNanos;
+        }
+
+        /**
+         * Determine if this entry can answer a search with the given limit. That's the case if it was fetched with
+         * at least that limit, or if the provider told there aren't any more results.
+         * @param limit Maximum number of URLs needed
+         * @return True if this entry answers the search
+         */
+        boolean covers(int limit)
+        {
+            return this.limit >= limit || exhausted;
+        }
+    }
+}
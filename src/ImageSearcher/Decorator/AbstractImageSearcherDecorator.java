@@ -0,0 +1,91 @@
+package ImageSearchFX.ImageSearcher.Decorator;
+
+import ImageSearchFX.ImageSearcher.ImagePage;
+import ImageSearchFX.ImageSearcher.ImageResult;
+import ImageSearchFX.ImageSearcher.ImageSearcherInterface;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Base class for image searchers that wrap another searcher to add behaviour, i.e. caching. Simply forwards
+ * everything to the wrapped searcher, so subclasses only need to override what they actually change.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public abstract class AbstractImageSearcherDecorator implements ImageSearcherInterface
+{
+    /**
+     * The wrapped searcher
+     */
+    protected final ImageSearcherInterface delegate;
+
+    /**
+     * Constructor
+     * @param delegate The searcher to wrap
+     */
+    protected AbstractImageSearcherDecorator(ImageSearcherInterface delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getUrlsBySearchTerm(String searchTerm, int limit) throws RuntimeException
+    {
+        return delegate.getUrlsBySearchTerm(searchTerm, limit);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getUrlsBySearchTerm(
+        String searchTerm,
+        int limit,
+        Consumer<String> urlConsumer
+    ) throws RuntimeException {
+        return delegate.getUrlsBySearchTerm(searchTerm, limit, urlConsumer);
+    }
+
+    @Override
+    public CompletableFuture<ImagePage> getPage(
+        String searchTerm,
+        int limit,
+        String cursor,
+        Consumer<String> urlConsumer
+    ) throws RuntimeException {
+        // Forwarded as well, otherwise the default would emulate paging on top of a searcher that can do it natively
+        return delegate.getPage(searchTerm, limit, cursor, urlConsumer);
+    }
+
+    @Override
+    public ImageResult getImageResult(String url)
+    {
+        return delegate.getImageResult(url);
+    }
+
+    @Override
+    public String getOriginalUrl(String url)
+    {
+        return delegate.getOriginalUrl(url);
+    }
+
+    @Override
+    public String getProviderName()
+    {
+        return delegate.getProviderName();
+    }
+
+    @Override
+    public void close()
+    {
+        delegate.close();
+    }
+
+    /**
+     * Returns the wrapped searcher
+     * @return The wrapped searcher
+     */
+    public ImageSearcherInterface getDelegate()
+    {
+        return delegate;
+    }
+}
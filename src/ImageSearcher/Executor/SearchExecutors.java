@@ -0,0 +1,162 @@
+package ImageSearchFX.ImageSearcher.Executor;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors for image searchers: Bounded in threads and queued searches, with named daemon threads so
+ * they neither block the JVM from exiting nor show up as anonymous pool-x-thread-y in thread dumps.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public final class SearchExecutors
+{
+    /**
+     * What happens to a search if all threads are busy and the queue is full
+     */
+    public enum RejectionPolicy
+    {
+        /**
+         * Fail the new search
+         */
+        ABORT,
+
+        /**
+         * Cancel the oldest queued search and queue the new one instead, the newest search is usually the relevant one.
+         * Only searches queued as FutureTask can be dropped, see rejectionHandler().
+         */
+        DISCARD_OLDEST,
+
+        /**
+         * Run the new search on the submitting thread, slows down the caller
+         */
+        CALLER_RUNS
+    }
+
+    /**
+     * Utility class, no instances
+     */
+    private SearchExecutors()
+    {
+    }
+
+    /**
+     * Creates a bounded executor
+     * @param name           Name prefix of the threads
+     * @param threads        Maximum number of concurrently running searches
+     * @param queueCapacity  Maximum number of waiting searches
+     * @param policy         What to do with searches that don't fit into the queue
+     * @param virtualThreads Use virtual threads if the JVM supports them, falls back to platform threads otherwise
+     * @return The executor
+     */
+    public static ThreadPoolExecutor newBoundedExecutor(
+        String name,
+        int threads,
+        int queueCapacity,
+        RejectionPolicy policy,
+        boolean virtualThreads
+    ) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            threads,
+            threads,
+            30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            virtualThreads ? virtualThreadFactory(name) : platformThreadFactory(name),
+            rejectionHandler(policy)
+        );
+
+        // Idle pools shouldn't keep threads around
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    /**
+     * Determine if the running JVM supports virtual threads
+     * @return True if virtual threads are available
+     */
+    public static boolean supportsVirtualThreads()
+    {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Thread factory for named daemon platform threads
+     * @param name Name prefix of the threads
+     * @return The thread factory
+     */
+    private static ThreadFactory platformThreadFactory(String name)
+    {
+        AtomicInteger counter = new AtomicInteger();
+
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        };
+    }
+
+    /**
+     * Thread factory for named virtual threads. Looked up by reflection to still run on JVMs without them.
+     * @param name Name prefix of the threads
+     * @return The thread factory, or one for platform threads if virtual threads aren't supported
+     */
+    private static ThreadFactory virtualThreadFactory(String name)
+    {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method nameMethod = Class.forName("java.lang.Thread$Builder").getMethod("name", String.class, long.class);
+            builder = nameMethod.invoke(builder, name + "-", 1L);
+
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return platformThreadFactory(name);
+        }
+    }
+
+    /**
+     * Creates the handler for a rejection policy
+     * @param policy The policy
+     * @return The handler
+     */
+    private static RejectedExecutionHandler rejectionHandler(RejectionPolicy policy)
+    {
+        switch (policy) {
+            case DISCARD_OLDEST:
+                return (runnable, executor) -> {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("Executor is shut down");
+                    }
+
+                    // Only a FutureTask notifies whoever waits for it when it's cancelled. Other queued work, i.e. the
+                    // internal tasks of CompletableFuture.supplyAsync(), would leave its caller waiting forever, so the
+                    // new search is rejected instead.
+                    Runnable oldest = executor.getQueue().peek();
+                    if (!(oldest instanceof FutureTask) || !executor.getQueue().remove(oldest)) {
+                        throw new RejectedExecutionException("Queue is full and its oldest search can't be dropped");
+                    }
+
+                    ((FutureTask<?>) oldest).cancel(false);
+                    executor.execute(runnable);
+                };
+            case CALLER_RUNS:
+                return new ThreadPoolExecutor.CallerRunsPolicy();
+            case ABORT:
+            default:
+                return new ThreadPoolExecutor.AbortPolicy();
+        }
+    }
+}
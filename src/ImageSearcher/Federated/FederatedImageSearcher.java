@@ -0,0 +1,732 @@
+package ImageSearchFX.ImageSearcher.Federated;
+
+import ImageSearchFX.ImageSearcher.ImagePage;
+import ImageSearchFX.ImageSearcher.ImageResult;
+import ImageSearchFX.ImageSearcher.ImageSearcherInterface;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Image searcher that queries several searchers at once, i.e. Pexels and Wikipedia, and merges their results into
+ * one list without duplicates. All searchers are queried in parallel. A searcher that doesn't answer within the
+ * provider timeout is cancelled and contributes what it found so far. Once the deadline is reached, the search
+ * completes with whatever arrived until then, so one slow provider doesn't hold up the rest.
+ *
+ * URLs are handed out to a URL consumer as they arrive and stay at the start of the returned list, the merge
+ * strategy orders what follows them. So callers showing the URLs as they arrive only get more URLs appended when the
+ * search completes. While streaming, INTERLEAVE hands out an equal share of every searcher and IN_ORDER only the
+ * URLs of the first searcher, so the fastest searcher doesn't fill the whole limit on its own.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class FederatedImageSearcher implements ImageSearcherInterface
+{
+    /**
+     * How the results of the searchers are combined
+     */
+    public enum MergeStrategy
+    {
+        /**
+         * Takes one URL of every searcher in turn, in the order the searchers were given
+         */
+        INTERLEAVE,
+
+        /**
+         * All URLs of the first searcher, then all of the second one, and so on. Ranks providers by their order.
+         */
+        IN_ORDER,
+
+        /**
+         * Order in which the URLs arrived, fastest provider first
+         */
+        ARRIVAL
+    }
+
+    /**
+     * Default maximum time a single searcher may take
+     */
+    public static final Duration DEFAULT_PROVIDER_TIMEOUT = Duration.ofSeconds(3);
+
+    /**
+     * Default maximum time the whole search may take
+     */
+    public static final Duration DEFAULT_DEADLINE = Duration.ofSeconds(4);
+
+    /**
+     * The searchers to query, in order of their rank
+     */
+    private final List<ImageSearcherInterface> searchers;
+
+    /**
+     * Maximum time a single searcher may take
+     */
+    private Duration providerTimeout = DEFAULT_PROVIDER_TIMEOUT;
+
+    /**
+     * Maximum time the whole search may take
+     */
+    private Duration deadline = DEFAULT_DEADLINE;
+
+    /**
+     * How the results of the searchers are combined
+     */
+    private MergeStrategy mergeStrategy = MergeStrategy.INTERLEAVE;
+
+    /**
+     * Constructor
+     * @param searchers The searchers to query, in order of their rank
+     */
+    public FederatedImageSearcher(ImageSearcherInterface... searchers)
+    {
+        this(Arrays.asList(searchers));
+    }
+
+    /**
+     * Constructor
+     * @param searchers The searchers to query, in order of their rank
+     */
+    public FederatedImageSearcher(List<ImageSearcherInterface> searchers)
+    {
+        if (searchers.isEmpty()) {
+            throw new IllegalArgumentException("At least one searcher is needed");
+        }
+
+        this.searchers = Collections.unmodifiableList(new ArrayList<>(searchers));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getUrlsBySearchTerm(String searchTerm, int limit) throws RuntimeException
+    {
+        return getUrlsBySearchTerm(searchTerm, limit, url -> {});
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getUrlsBySearchTerm(
+        String searchTerm,
+        int limit,
+        Consumer<String> urlConsumer
+    ) throws RuntimeException {
+        List<Integer> all = new ArrayList<>();
+
+        for (int i = 0; i < searchers.size(); i++) {
+            all.add(i);
+        }
+
+        return fanOut(
+            all,
+            (index, consumer) -> searchers.get(index).getUrlsBySearchTerm(searchTerm, limit, consumer),
+            urls -> urls,
+            (branches, merged) -> merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged,
+            urlConsumer,
+            limit
+        );
+    }
+
+    /**
+     * Returns a page of every searcher that has more, merged into one. A page may therefore hold up to `limit`
+     * images per searcher. The cursor holds the cursors of all searchers, searchers that didn't answer in time
+     * are asked for the same page again.
+     */
+    @Override
+    public CompletableFuture<ImagePage> getPage(
+        String searchTerm,
+        int limit,
+        String cursor,
+        Consumer<String> urlConsumer
+    ) throws RuntimeException {
+        Map<Integer, String> cursors;
+
+        try {
+            cursors = decodeCursor(cursor);
+        } catch (IllegalArgumentException e) {
+            CompletableFuture<ImagePage> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+
+        List<Integer> indices = new ArrayList<>(cursors.keySet());
+
+        return fanOut(
+            indices,
+            (index, consumer) -> searchers.get(index).getPage(searchTerm, limit, cursors.get(index), consumer),
+            ImagePage::getUrls,
+            (branches, merged) -> {
+                Map<Integer, String> next = new LinkedHashMap<>();
+
+                for (int i = 0; i < branches.size(); i++) {
+                    Branch<ImagePage> branch = branches.get(i);
+
+                    if (branch.result == null) {
+                        next.put(indices.get(i), cursors.get(indices.get(i))); // Try the same page again next time
+                    } else if (branch.result.hasMore()) {
+                        next.put(indices.get(i), branch.result.getNextCursor());
+                    }
+                }
+
+                return new ImagePage(merged, next.isEmpty() ? null : encodeCursor(next));
+            },
+            urlConsumer,
+            Integer.MAX_VALUE
+        );
+    }
+
+    /**
+     * Queries some of the searchers in parallel and merges their results
+     * @param indices      Indices of the searchers to query
+     * @param call         Starts the search of a single searcher, by its index
+     * @param urlsOf       Extracts the URLs of a single searcher's result
+     * @param finish       Builds the final result of all branches and the merged URLs
+     * @param urlConsumer  Gets every URL as soon as it's found
+     * @param maxHandedOut Maximum number of URLs handed out to the URL consumer
+     * @return Future of the final result
+     */
+    private <T, R> CompletableFuture<R> fanOut(
+        List<Integer> indices,
+        BiFunction<Integer, Consumer<String>, CompletableFuture<T>> call,
+        Function<T, List<String>> urlsOf,
+        BiFunction<List<Branch<T>>, List<String>, R> finish,
+        Consumer<String> urlConsumer,
+        int maxHandedOut
+    ) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        List<Branch<T>> branches = new ArrayList<>();
+        Arrival arrival = new Arrival(urlConsumer, maxHandedOut, indices.size(), mergeStrategy);
+        AtomicInteger pending = new AtomicInteger(indices.size());
+
+        // Completes the search with everything that arrived so far, only the first call counts
+        Runnable complete = () -> {
+            if (future.isDone()) {
+                return;
+            }
+
+            // URLs handed out already come first, the merge only decides the order of the rest
+            Set<String> ordered = new LinkedHashSet<>(arrival.close());
+            ordered.addAll(merge(branches, arrival));
+            List<String> merged = new ArrayList<>(ordered);
+
+            // Nothing to show and every searcher failed, so the search failed
+            Throwable error = merged.isEmpty() ? firstError(branches) : null;
+
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(finish.apply(branches, merged));
+            }
+        };
+
+        for (int index : indices) {
+            branches.add(new Branch<>());
+        }
+
+        for (int i = 0; i < indices.size(); i++) {
+            Branch<T> branch = branches.get(i);
+            int position = i;
+            CompletableFuture<T> search;
+
+            try {
+                search = call.apply(indices.get(i), url -> {
+                    if (!future.isDone() && branch.add(url)) {
+                        arrival.add(url, position);
+                    }
+                });
+            } catch (RuntimeException e) {
+                search = new CompletableFuture<>();
+                search.completeExceptionally(e);
+            }
+
+            branch.search = search;
+
+            search.whenComplete((result, e) -> {
+                if (e == null && result != null) {
+                    // The complete result is authoritative, searchers may not hand out every URL one by one
+                    for (String url : branch.complete(result, urlsOf.apply(result))) {
+                        if (!future.isDone()) {
+                            arrival.add(url, position);
+                        }
+                    }
+                } else {
+                    branch.fail(e);
+                }
+
+                if (pending.decrementAndGet() == 0) {
+                    complete.run();
+                }
+            });
+
+            // A searcher that takes too long is cancelled, whatever it found so far is kept
+            CompletableFuture<T> timedSearch = search;
+            CompletableFuture.delayedExecutor(providerTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .execute(() -> timedSearch.cancel(true));
+        }
+
+        CompletableFuture.delayedExecutor(deadline.toMillis(), TimeUnit.MILLISECONDS).execute(complete);
+
+        // Searchers still running after the deadline, or after the caller cancelled, aren't needed anymore
+        future.whenComplete((result, e) -> {
+            for (Branch<T> branch : branches) {
+                if (branch.search != null) {
+                    branch.search.cancel(true);
+                }
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Merges the URLs of all branches by the merge strategy, without duplicates
+     * @param branches The branches, in order of their searchers' rank
+     * @param arrival  URLs in order of arrival
+     * @return Merged URLs
+     */
+    private List<String> merge(List<? extends Branch<?>> branches, Arrival arrival)
+    {
+        Set<String> merged = new LinkedHashSet<>();
+
+        if (mergeStrategy == MergeStrategy.ARRIVAL) {
+            merged.addAll(arrival.snapshot());
+            return new ArrayList<>(merged);
+        }
+
+        List<List<String>> lists = new ArrayList<>();
+
+        for (Branch<?> branch : branches) {
+            lists.add(branch.snapshot());
+        }
+
+        if (mergeStrategy == MergeStrategy.IN_ORDER) {
+            for (List<String> list : lists) {
+                merged.addAll(list);
+            }
+
+            return new ArrayList<>(merged);
+        }
+
+        // Interleave: One URL of every list in turn
+        int longest = 0;
+
+        for (List<String> list : lists) {
+            longest = Math.max(longest, list.size());
+        }
+
+        for (int i = 0; i < longest; i++) {
+            for (List<String> list : lists) {
+                if (i < list.size()) {
+                    merged.add(list.get(i));
+                }
+            }
+        }
+
+        return new ArrayList<>(merged);
+    }
+
+    /**
+     * Returns the error of the first branch, if all of them failed
+     * @param branches The branches
+     * @return The error, null if any branch didn't fail
+     */
+    private static Throwable firstError(List<? extends Branch<?>> branches)
+    {
+        Throwable first = null;
+
+        for (Branch<?> branch : branches) {
+            if (branch.error == null) {
+                return null;
+            }
+
+            if (first == null) {
+                first = branch.error;
+            }
+        }
+
+        return first;
+    }
+
+    /**
+     * Encodes the cursors of all searchers that have more pages, i.e. `0=token&1`. A searcher without a value
+     * still needs its first page.
+     * @param cursors Cursor by searcher index, null for the first page
+     * @return The cursor
+     */
+    private static String encodeCursor(Map<Integer, String> cursors)
+    {
+        StringBuilder builder = new StringBuilder();
+
+        try {
+            for (Map.Entry<Integer, String> entry : cursors.entrySet()) {
+                if (builder.length() > 0) {
+                    builder.append('&');
+                }
+
+                builder.append(entry.getKey());
+
+                if (entry.getValue() != null) {
+                    builder.append('=').append(URLEncoder.encode(entry.getValue(), "UTF-8"));
+                }
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e); // UTF-8 is always supported
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Decodes a cursor built by encodeCursor()
+     * @param cursor The cursor, null for the first page of all searchers
+     * @return Cursor by searcher index, null for the first page
+     * @throws IllegalArgumentException If the cursor is invalid
+     */
+    private Map<Integer, String> decodeCursor(String cursor)
+    {
+        Map<Integer, String> cursors = new LinkedHashMap<>();
+
+        if (cursor == null) {
+            for (int i = 0; i < searchers.size(); i++) {
+                cursors.put(i, null);
+            }
+
+            return cursors;
+        }
+
+        try {
+            for (String part : cursor.split("&")) {
+                int separator = part.indexOf('=');
+                int index = Integer.parseInt(separator == -1 ? part : part.substring(0, separator));
+
+                if (index < 0 || index >= searchers.size()) {
+                    throw new IllegalArgumentException("Invalid cursor: " + cursor);
+                }
+
+                cursors.put(index, separator == -1 ? null : URLDecoder.decode(part.substring(separator + 1), "UTF-8"));
+            }
+        } catch (NumberFormatException | UnsupportedEncodingException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+
+        return cursors;
+    }
+
+    /**
+     * Asks every searcher for the result, the first one that knows more than the URL wins
+     * @param url URL found by one of the searchers
+     * @return The result
+     */
+    @Override
+    public ImageResult getImageResult(String url)
+    {
+        for (ImageSearcherInterface searcher : searchers) {
+            ImageResult result = searcher.getImageResult(url);
+
+            if (result.hasMetadata()) {
+                return result;
+            }
+        }
+
+        return new ImageResult(url);
+    }
+
+    /**
+     * Asks every searcher for the original, the first one that knows the URL as a thumbnail wins
+     * @param url URL found by one of the searchers
+     * @return URL of the full size image
+     */
+    @Override
+    public String getOriginalUrl(String url)
+    {
+        for (ImageSearcherInterface searcher : searchers) {
+            String original = searcher.getOriginalUrl(url);
+
+            if (original != null && !original.equals(url)) {
+                return original;
+            }
+        }
+
+        return url;
+    }
+
+    @Override
+    public String getProviderName()
+    {
+        List<String> names = new ArrayList<>();
+
+        for (ImageSearcherInterface searcher : searchers) {
+            names.add(searcher.getProviderName());
+        }
+
+        return getClass().getName() + names + mergeStrategy;
+    }
+
+    /**
+     * Closes all searchers
+     */
+    @Override
+    public void close()
+    {
+        for (ImageSearcherInterface searcher : searchers) {
+            searcher.close();
+        }
+    }
+
+    /**
+     * Returns the searchers, in order of their rank
+     * @return Unmodifiable list of searchers
+     */
+    public List<ImageSearcherInterface> getSearchers()
+    {
+        return searchers;
+    }
+
+    /**
+     * Sets the maximum time a single searcher may take
+     * @param providerTimeout The timeout
+     */
+    public void setProviderTimeout(Duration providerTimeout)
+    {
+        this.providerTimeout = providerTimeout;
+    }
+
+    /**
+     * Sets the maximum time the whole search may take, the search completes with the results so far then
+     * @param deadline The deadline
+     */
+    public void setDeadline(Duration deadline)
+    {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Sets how the results of the searchers are combined
+     * @param mergeStrategy The strategy
+     */
+    public void setMergeStrategy(MergeStrategy mergeStrategy)
+    {
+        this.mergeStrategy = mergeStrategy;
+    }
+
+    /**
+     * State of the search of a single searcher
+     */
+    private static class Branch<T>
+    {
+        /**
+         * The running search
+         */
+        private volatile CompletableFuture<T> search;
+
+        /**
+         * URLs found so far, in order of the searcher
+         */
+        private final List<String> urls = new ArrayList<>();
+
+        /**
+         * Complete result, null until the search completed normally
+         */
+        private volatile T result;
+
+        /**
+         * Why the search failed, null if it didn't
+         */
+        private volatile Throwable error;
+
+        /**
+         * Adds a URL handed out by the searcher
+         * @param url The URL
+         * @return True if it's new to this branch
+         */
+        synchronized boolean add(String url)
+        {
+            if (urls.contains(url)) {
+                return false;
+            }
+
+            urls.add(url);
+            return true;
+        }
+
+        /**
+         * Replaces the URLs with the complete result
+         * @param result The result
+         * @param all    All URLs of the result
+         * @return URLs that weren't handed out before
+         */
+        synchronized List<String> complete(T result, List<String> all)
+        {
+            List<String> added = new ArrayList<>(all);
+            added.removeAll(urls);
+
+            urls.clear();
+            urls.addAll(all);
+            this.result = result;
+
+            return added;
+        }
+
+        /**
+         * Marks the search as failed, the URLs found so far are kept
+         * @param error Why it failed
+         */
+        void fail(Throwable error)
+        {
+            if (error instanceof CompletionException && error.getCause() != null) {
+                error = error.getCause();
+            }
+
+            // Cancelled by the provider timeout. Handing out the CancellationException would look like the whole
+            // search was cancelled by the caller.
+            if (error instanceof CancellationException) {
+                error = new TimeoutException("Searcher didn't answer in time");
+            }
+
+            this.error = error;
+        }
+
+        /**
+         * Returns a copy of the URLs found so far
+         * @return The URLs
+         */
+        synchronized List<String> snapshot()
+        {
+            return new ArrayList<>(urls);
+        }
+    }
+
+    /**
+     * URLs of all branches in order of arrival, hands new ones out to the URL consumer as far as the merge strategy
+     * allows, see the class description
+     */
+    private static class Arrival
+    {
+        /**
+         * Gets the URLs handed out
+         */
+        private final Consumer<String> urlConsumer;
+
+        /**
+         * Maximum number of URLs handed out, more of them would only be cut off by the limit in the end
+         */
+        private final int maxHandedOut;
+
+        /**
+         * Maximum number of URLs handed out per branch
+         */
+        private final int maxPerBranch;
+
+        /**
+         * How the results are combined in the end
+         */
+        private final MergeStrategy mergeStrategy;
+
+        /**
+         * URLs in order of arrival, without duplicates
+         */
+        private final Set<String> urls = new LinkedHashSet<>();
+
+        /**
+         * URLs handed out, in the order they were handed out
+         */
+        private final Set<String> handedOut = new LinkedHashSet<>();
+
+        /**
+         * Number of URLs handed out per branch
+         */
+        private final int[] handedOutPerBranch;
+
+        /**
+         * Flag if the search completed, nothing is handed out anymore then
+         */
+        private boolean closed = false;
+
+        /**
+         * Constructor
+         * @param urlConsumer   Gets the URLs handed out
+         * @param maxHandedOut  Maximum number of URLs handed out
+         * @param branches      Number of branches
+         * @param mergeStrategy How the results are combined in the end
+         */
+        Arrival(Consumer<String> urlConsumer, int maxHandedOut, int branches, MergeStrategy mergeStrategy)
+        {
+            this.urlConsumer = urlConsumer;
+            this.maxHandedOut = maxHandedOut;
+            this.maxPerBranch = maxHandedOut / branches + (maxHandedOut % branches == 0 ? 0 : 1);
+            this.mergeStrategy = mergeStrategy;
+            this.handedOutPerBranch = new int[branches];
+        }
+
+        /**
+         * Adds a URL of a branch and hands it out, if it wasn't handed out before and the merge strategy allows it.
+         * Handed out while holding the lock, the order of handedOut() has to be the order the consumer saw.
+         * @param url    The URL
+         * @param branch Position of the branch, in order of the searchers' rank
+         */
+        synchronized void add(String url, int branch)
+        {
+            urls.add(url);
+
+            if (closed || handedOut.size() >= maxHandedOut || !mayHandOut(branch) || !handedOut.add(url)) {
+                return;
+            }
+
+            handedOutPerBranch[branch]++;
+            urlConsumer.accept(url);
+        }
+
+        /**
+         * Determine if another URL of a branch may be handed out
+         * @param branch Position of the branch
+         * @return True if it may
+         */
+        private boolean mayHandOut(int branch)
+        {
+            switch (mergeStrategy) {
+                case IN_ORDER:
+                    return branch == 0;
+                case INTERLEAVE:
+                    return handedOutPerBranch[branch] < maxPerBranch;
+                case ARRIVAL:
+                default:
+                    return true;
+            }
+        }
+
+        /**
+         * Returns a copy of the URLs in order of arrival
+         * @return The URLs
+         */
+        synchronized List<String> snapshot()
+        {
+            return new ArrayList<>(urls);
+        }
+
+        /**
+         * Stops handing out URLs, so none can be handed out after the result was built
+         * @return The URLs handed out, in the order they were handed out
+         */
+        synchronized List<String> close()
+        {
+            closed = true;
+
+            return new ArrayList<>(handedOut);
+        }
+    }
+}
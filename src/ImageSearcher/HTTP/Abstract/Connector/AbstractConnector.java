@@ -1,8 +1,13 @@
 package ImageSearchFX.ImageSearcher.HTTP.Abstract.Connector;
 
+import ImageSearchFX.ImageSearcher.RateLimit.TokenBucket;
+
 import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.http.HttpRequest;
+import java.time.Duration;
 import java.util.Map;
 
 /**
@@ -17,6 +22,16 @@ public abstract class AbstractConnector
      */
     public final String charset = "UTF-8";
 
+    /**
+     * Maximum time to wait for a connection to be established, an unreachable API shouldn't block a thread for long
+     */
+    private Duration connectTimeout = Duration.ofSeconds(5);
+
+    /**
+     * Maximum time to wait for data while reading the response
+     */
+    private Duration readTimeout = Duration.ofSeconds(10);
+
     /**
      * Builds a connection object that can be used to query an API
      * @param searchTerm Phrase to search for
@@ -26,14 +41,105 @@ public abstract class AbstractConnector
      */
     public HttpURLConnection buildConnection(String searchTerm, int limit) throws IOException
     {
-        HttpURLConnection connection = (HttpURLConnection) buildUrl(searchTerm, limit).openConnection();
+        return buildConnection(searchTerm, limit, null);
+    }
+
+    /**
+     * Builds a connection object that queries a single page of results
+     * @param searchTerm Phrase to search for
+     * @param limit      Maximum number of images
+     * @param cursor     Cursor of the page as returned by the parser, null for the first page
+     * @return Connection object, ready to be fired
+     * @throws IOException
+     */
+    public HttpURLConnection buildConnection(String searchTerm, int limit, String cursor) throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection) buildUrl(searchTerm, limit, cursor).openConnection();
         connection.setRequestProperty("Accept-Charset", charset);
+        connection.setConnectTimeout((int) connectTimeout.toMillis());
+        connection.setReadTimeout((int) readTimeout.toMillis());
 
         getHeaders().forEach(connection::setRequestProperty);
 
         return connection;
     }
 
+    /**
+     * Builds a request that can be sent with a java.net.http.HttpClient
+     * @param searchTerm Phrase to search for
+     * @param limit      Maximum number of images
+     * @param timeout    Maximum time to wait for the response
+     * @return Request, ready to be sent
+     * @throws IOException
+     */
+    public HttpRequest buildRequest(String searchTerm, int limit, Duration timeout) throws IOException
+    {
+        return buildRequest(searchTerm, limit, null, timeout);
+    }
+
+    /**
+     * Builds a request for a single page of results that can be sent with a java.net.http.HttpClient
+     * @param searchTerm Phrase to search for
+     * @param limit      Maximum number of images
+     * @param cursor     Cursor of the page as returned by the parser, null for the first page
+     * @param timeout    Maximum time to wait for the response
+     * @return Request, ready to be sent
+     * @throws IOException
+     */
+    public HttpRequest buildRequest(String searchTerm, int limit, String cursor, Duration timeout) throws IOException
+    {
+        HttpRequest.Builder builder;
+
+        try {
+            builder = HttpRequest.newBuilder(buildUrl(searchTerm, limit, cursor).toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid URL for search term " + searchTerm, e);
+        }
+
+        builder.timeout(timeout).header("Accept-Charset", charset).GET();
+        getHeaders().forEach(builder::header);
+
+        return builder.build();
+    }
+
+    /**
+     * Sets the maximum time to wait for a connection to be established by buildConnection()
+     * @param connectTimeout The timeout
+     */
+    public void setConnectTimeout(Duration connectTimeout)
+    {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Sets the maximum time to wait for data while reading the response of a connection built by buildConnection()
+     * @param readTimeout The timeout
+     */
+    public void setReadTimeout(Duration readTimeout)
+    {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Returns the bucket of the API's request quota, shared by all connectors that use the same API key. Wrap
+     * searchers in a RateLimitedImageSearcher with it to stay within the quota.
+     * @return The bucket, null if the API has no known quota
+     */
+    public TokenBucket getRateLimit()
+    {
+        return null;
+    }
+
+    /**
+     * Returns a name that identifies the API and the kind of results this connector queries, used by the searchers
+     * as their provider name. Connectors with modes that return different URLs for the same search extend it.
+     * @return Provider name
+     */
+    public String getProviderName()
+    {
+        return getClass().getName();
+    }
+
     /**
      * Build a URL for this connector
      * @param searchTerm Phrase to search for
@@ -42,6 +148,23 @@ public abstract class AbstractConnector
      */
     protected abstract URL buildUrl(String searchTerm, int limit) throws IOException;
 
+    /**
+     * Build a URL for a single page of results. Connectors of APIs that support paging override this, the default
+     * only knows the first page.
+     * @param searchTerm Phrase to search for
+     * @param limit      Maximum number of images
+     * @param cursor     Cursor of the page as returned by the parser, null for the first page
+     * @return URL to build a connection with
+     */
+    protected URL buildUrl(String searchTerm, int limit, String cursor) throws IOException
+    {
+        if (cursor != null) {
+            throw new IOException(getClass().getSimpleName() + " doesn't support paging");
+        }
+
+        return buildUrl(searchTerm, limit);
+    }
+
     /**
      * Creates a list of headers to apply to the request
      * @return Map of headers
@@ -1,16 +1,49 @@
 package ImageSearchFX.ImageSearcher.HTTP.Abstract.Factory;
 
+import ImageSearchFX.ImageSearcher.Executor.SearchExecutors;
 import ImageSearchFX.ImageSearcher.HTTP.Abstract.Connector.AbstractConnector;
 import ImageSearchFX.ImageSearcher.HTTP.Abstract.Parser.ParserInterface;
+import ImageSearchFX.ImageSearcher.HTTP.HttpClientImageSearcher;
 import ImageSearchFX.ImageSearcher.HTTP.HttpImageSearcher;
+import ImageSearchFX.ImageSearcher.ImageSearcherInterface;
+import ImageSearchFX.ImageSearcher.RateLimit.RateLimitedImageSearcher;
+import ImageSearchFX.ImageSearcher.RateLimit.TokenBucket;
 
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
 
 /**
+ * Base factory for HttpImageSearchers. All searchers created by the same factory share one bounded executor,
+ * which is shut down when the factory is closed.
+ *
  * Created by pascal.thormeier on 09.01.2017.
  */
-public abstract class AbstractHttpImageSearcherFactory
+public abstract class AbstractHttpImageSearcherFactory implements AutoCloseable
 {
+    /**
+     * Maximum number of concurrently running requests
+     */
+    private int threads = 4;
+
+    /**
+     * Maximum number of requests waiting for a free thread
+     */
+    private int queueCapacity = 16;
+
+    /**
+     * What happens to requests that don't fit into the queue anymore
+     */
+    private SearchExecutors.RejectionPolicy rejectionPolicy = SearchExecutors.RejectionPolicy.DISCARD_OLDEST;
+
+    /**
+     * Flag to run requests on virtual threads, if supported by the JVM
+     */
+    private boolean virtualThreads = false;
+
+    /**
+     * Executor shared by all searchers of this factory, created on first use
+     */
+    private ExecutorService executor;
+
     /**
      * Returns an HttpImageSearcher
      * @return A fully functional HttpImageSearcher
@@ -19,10 +52,106 @@ public abstract class AbstractHttpImageSearcherFactory
         return new HttpImageSearcher(
             getConnector(),
             getParser(),
-            Executors.newSingleThreadExecutor()
+            getExecutor()
         );
     }
 
+    /**
+     * Returns an HttpClientImageSearcher, which reuses connections via the shared java.net.http.HttpClient.
+     * Responses are parsed on the executor of this factory.
+     * @return A fully functional HttpClientImageSearcher
+     */
+    public HttpClientImageSearcher getHttpClientSearcher()
+    {
+        return new HttpClientImageSearcher(
+            getConnector(),
+            getParser(),
+            HttpClientImageSearcher.getSharedClient(),
+            getExecutor()
+        );
+    }
+
+    /**
+     * Returns an HttpImageSearcher that stays within the request quota of the API, see AbstractConnector.getRateLimit().
+     * The quota is shared with all other searchers using the same API key.
+     * @return A fully functional searcher, simply an HttpImageSearcher if the API has no known quota
+     */
+    public ImageSearcherInterface getRateLimited()
+    {
+        AbstractConnector connector = getConnector();
+        TokenBucket rateLimit = connector.getRateLimit();
+        HttpImageSearcher searcher = new HttpImageSearcher(connector, getParser(), getExecutor());
+
+        return rateLimit == null ? searcher : new RateLimitedImageSearcher(searcher, rateLimit);
+    }
+
+    /**
+     * Returns the executor shared by all searchers of this factory
+     * @return The executor
+     */
+    public synchronized ExecutorService getExecutor()
+    {
+        if (executor == null) {
+            executor = SearchExecutors.newBoundedExecutor(
+                getClass().getSimpleName(),
+                threads,
+                queueCapacity,
+                rejectionPolicy,
+                virtualThreads
+            );
+        }
+
+        return executor;
+    }
+
+    /**
+     * Sets the maximum number of concurrently running requests, only has an effect before the first get()
+     * @param threads Number of threads
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the maximum number of waiting requests, only has an effect before the first get()
+     * @param queueCapacity Number of requests
+     */
+    public void setQueueCapacity(int queueCapacity)
+    {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Sets what happens to requests that don't fit into the queue, only has an effect before the first get()
+     * @param rejectionPolicy The policy
+     */
+    public void setRejectionPolicy(SearchExecutors.RejectionPolicy rejectionPolicy)
+    {
+        this.rejectionPolicy = rejectionPolicy;
+    }
+
+    /**
+     * Enables virtual threads if the JVM supports them, only has an effect before the first get()
+     * @param virtualThreads True to use virtual threads
+     */
+    public void setVirtualThreads(boolean virtualThreads)
+    {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Shuts down the shared executor, all searchers created by this factory stop working
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
     /**
      * Returns a Connector instance
      * @return A connector
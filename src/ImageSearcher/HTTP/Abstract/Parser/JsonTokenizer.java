@@ -0,0 +1,271 @@
+package ImageSearchFX.ImageSearcher.HTTP.Abstract.Parser;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Minimal streaming JSON tokenizer, since Java doesn't come with a JSON parser. Reads the response chunk by chunk
+ * and hands out one token at a time, so parsers can stop as soon as they found what they need and never hold the
+ * whole response in memory. Lenient: Doesn't validate the structure, only splits it into tokens.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class JsonTokenizer
+{
+    /**
+     * Token types
+     */
+    public enum Token
+    {
+        START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY, NAME, STRING, NUMBER, TRUE, FALSE, NULL, END_DOCUMENT
+    }
+
+    /**
+     * Source of the JSON
+     */
+    private final Reader reader;
+
+    /**
+     * Read buffer
+     */
+    private final char[] buffer = new char[8192];
+
+    /**
+     * Position of the next char in the buffer
+     */
+    private int position = 0;
+
+    /**
+     * Number of valid chars in the buffer
+     */
+    private int length = 0;
+
+    /**
+     * Text of the current NAME, STRING or NUMBER token, reused for every token
+     */
+    private final StringBuilder text = new StringBuilder();
+
+    /**
+     * Current nesting depth of objects and arrays
+     */
+    private int depth = 0;
+
+    /**
+     * Constructor
+     * @param reader Source of the JSON
+     */
+    public JsonTokenizer(Reader reader)
+    {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the next token
+     * @return The token, END_DOCUMENT once the source is exhausted
+     * @throws IOException
+     */
+    public Token next() throws IOException
+    {
+        int c = nextSignificant();
+
+        while (c == ',' || c == ':') {
+            c = nextSignificant();
+        }
+
+        switch (c) {
+            case -1:
+                return Token.END_DOCUMENT;
+            case '{':
+                depth++;
+                return Token.START_OBJECT;
+            case '}':
+                depth--;
+                return Token.END_OBJECT;
+            case '[':
+                depth++;
+                return Token.START_ARRAY;
+            case ']':
+                depth--;
+                return Token.END_ARRAY;
+            case '"':
+                readString();
+
+                // A string followed by a colon is the name of a member
+                int following = nextSignificant();
+                if (following == ':') {
+                    return Token.NAME;
+                }
+
+                if (following != -1) {
+                    position--;
+                }
+
+                return Token.STRING;
+            default:
+                return readLiteral((char) c);
+        }
+    }
+
+    /**
+     * Skips the value following a NAME token, including nested objects and arrays
+     * @throws IOException
+     */
+    public void skipValue() throws IOException
+    {
+        Token token = next();
+
+        if (token != Token.START_OBJECT && token != Token.START_ARRAY) {
+            return;
+        }
+
+        int targetDepth = depth - 1;
+        while (depth > targetDepth && token != Token.END_DOCUMENT) {
+            token = next();
+        }
+    }
+
+    /**
+     * Returns the text of the current NAME, STRING or NUMBER token
+     * @return The text
+     */
+    public String getText()
+    {
+        return text.toString();
+    }
+
+    /**
+     * Compares the text of the current token without creating a String
+     * @param other The text to compare to
+     * @return True if equal
+     */
+    public boolean textEquals(String other)
+    {
+        if (text.length() != other.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < other.length(); i++) {
+            if (text.charAt(i) != other.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the current nesting depth, 1 inside the root object
+     * @return The depth
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * Reads the rest of a string into text, the opening quote is already consumed
+     * @throws IOException
+     */
+    private void readString() throws IOException
+    {
+        text.setLength(0);
+
+        int c;
+        while ((c = read()) != -1 && c != '"') {
+            if (c != '\\') {
+                text.append((char) c);
+                continue;
+            }
+
+            c = read();
+            switch (c) {
+                case 'n': text.append('\n'); break;
+                case 't': text.append('\t'); break;
+                case 'r': text.append('\r'); break;
+                case 'b': text.append('\b'); break;
+                case 'f': text.append('\f'); break;
+                case 'u':
+                    int codePoint = 0;
+                    for (int i = 0; i < 4; i++) {
+                        codePoint = (codePoint << 4) + Character.digit(read(), 16);
+                    }
+                    text.append((char) codePoint);
+                    break;
+                case -1:
+                    return;
+                default: // \" \\ \/
+                    text.append((char) c);
+            }
+        }
+    }
+
+    /**
+     * Reads a number or one of true, false and null
+     * @param first The first char of the literal
+     * @return The token
+     * @throws IOException
+     */
+    private Token readLiteral(char first) throws IOException
+    {
+        text.setLength(0);
+        text.append(first);
+
+        int c;
+        while ((c = read()) != -1 && ",:]}\" \t\r\n".indexOf(c) == -1) {
+            text.append((char) c);
+        }
+
+        if (c != -1) {
+            position--;
+        }
+
+        if (textEquals("true")) {
+            return Token.TRUE;
+        }
+
+        if (textEquals("false")) {
+            return Token.FALSE;
+        }
+
+        if (textEquals("null")) {
+            return Token.NULL;
+        }
+
+        return Token.NUMBER;
+    }
+
+    /**
+     * Reads the next char that isn't whitespace
+     * @return The char or -1 at the end of the source
+     * @throws IOException
+     */
+    private int nextSignificant() throws IOException
+    {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+
+        return c;
+    }
+
+    /**
+     * Reads a single char, refills the buffer if necessary
+     * @return The char or -1 at the end of the source
+     * @throws IOException
+     */
+    private int read() throws IOException
+    {
+        if (position == length) {
+            length = reader.read(buffer, 0, buffer.length);
+            position = 0;
+
+            if (length <= 0) {
+                length = 0;
+                return -1;
+            }
+        }
+
+        return buffer[position++];
+    }
+}
@@ -1,11 +1,15 @@
 package ImageSearchFX.ImageSearcher.HTTP.Abstract.Parser;
 
 import ImageSearchFX.ImageSearcher.HTTP.Abstract.Connector.AbstractConnector;
+import ImageSearchFX.ImageSearcher.ImagePage;
+import ImageSearchFX.ImageSearcher.ImageResult;
 import org.xml.sax.SAXException;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Interface for all parsers. Those parse responses of requests done by the HttpImageSearcher
@@ -24,4 +28,98 @@ public interface ParserInterface
      * @throws SAXException
      */
     public List<String> parseResponse(InputStream responseStream, int limit) throws ParserConfigurationException, IOException, SAXException;
+
+    /**
+     * Parses a given response, hands out every image URL as soon as it's found and returns all of them. Parsers
+     * that read the whole response at once simply hand them out at the end, which is what this default does.
+     * @param responseStream Stream of the response of the connection built by a connector
+     * @param limit          Maximum number of images
+     * @param urlConsumer    Gets every URL as soon as it's found
+     * @return List of image URLs as Strings
+     * @throws ParserConfigurationException
+     * @throws IOException
+     * @throws SAXException
+     */
+    default List<String> parseResponse(InputStream responseStream, int limit, Consumer<String> urlConsumer) throws ParserConfigurationException, IOException, SAXException
+    {
+        List<String> urls = parseResponse(responseStream, limit);
+        urls.forEach(urlConsumer);
+
+        return urls;
+    }
+
+    /**
+     * Parses the response of a request for a single page and returns its image URLs together with the cursor of
+     * the next page, see AbstractConnector.buildUrl() with a cursor. Parsers of APIs that don't support paging
+     * use this default, which always returns the last page.
+     * @param responseStream Stream of the response of the connection built by a connector
+     * @param limit          Maximum number of images, the page size the request was built with
+     * @param cursor         Cursor the request was built with, null for the first page
+     * @param urlConsumer    Gets every URL as soon as it's found
+     * @return The page
+     * @throws ParserConfigurationException
+     * @throws IOException
+     * @throws SAXException
+     */
+    default ImagePage parsePage(InputStream responseStream, int limit, String cursor, Consumer<String> urlConsumer) throws ParserConfigurationException, IOException, SAXException
+    {
+        return new ImagePage(parseResponse(responseStream, limit, urlConsumer), null);
+    }
+
+    /**
+     * Parses a given response into results with everything the API tells about the images, i.e. their sizes. This
+     * is what the HTTP searchers use. Parsers that only pick out URLs use this default, which adapts parseResponse().
+     * @param responseStream Stream of the response of the connection built by a connector
+     * @param limit          Maximum number of images
+     * @param resultConsumer Gets every result as soon as it's found
+     * @return List of results
+     * @throws ParserConfigurationException
+     * @throws IOException
+     * @throws SAXException
+     */
+    default List<ImageResult> parseResults(InputStream responseStream, int limit, Consumer<ImageResult> resultConsumer) throws ParserConfigurationException, IOException, SAXException
+    {
+        List<ImageResult> results = new ArrayList<>();
+
+        parseResponse(responseStream, limit, url -> {
+            ImageResult result = new ImageResult(url);
+            result.setOriginalUrl(getOriginalUrl(url));
+            results.add(result);
+            resultConsumer.accept(result);
+        });
+
+        return results;
+    }
+
+    /**
+     * Parses the response of a request for a single page into results, see parseResults() and parsePage(). Parsers
+     * that only pick out URLs use this default, which adapts parsePage().
+     * @param responseStream Stream of the response of the connection built by a connector
+     * @param limit          Maximum number of images, the page size the request was built with
+     * @param cursor         Cursor the request was built with, null for the first page
+     * @param resultConsumer Gets every result as soon as it's found
+     * @return The page
+     * @throws ParserConfigurationException
+     * @throws IOException
+     * @throws SAXException
+     */
+    default ImagePage parseResultPage(InputStream responseStream, int limit, String cursor, Consumer<ImageResult> resultConsumer) throws ParserConfigurationException, IOException, SAXException
+    {
+        return parsePage(responseStream, limit, cursor, url -> {
+            ImageResult result = new ImageResult(url);
+            result.setOriginalUrl(getOriginalUrl(url));
+            resultConsumer.accept(result);
+        });
+    }
+
+    /**
+     * Returns the URL of the full size image behind a URL this parser found, i.e. the original of a thumbnail.
+     * Parsers that always return the full size images use this default.
+     * @param url URL found by this parser
+     * @return URL of the full size image
+     */
+    default String getOriginalUrl(String url)
+    {
+        return url;
+    }
 }
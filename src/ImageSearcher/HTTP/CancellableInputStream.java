@@ -0,0 +1,64 @@
+package ImageSearchFX.ImageSearcher.HTTP;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Input stream that stops reading as soon as the request it belongs to is cancelled, so parsers don't keep on
+ * working on responses nobody is interested in anymore.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class CancellableInputStream extends FilterInputStream
+{
+    /**
+     * Tells if the request was cancelled
+     */
+    private final BooleanSupplier isCancelled;
+
+    /**
+     * Constructor
+     * @param in          The stream to read from
+     * @param isCancelled Tells if the request was cancelled
+     */
+    public CancellableInputStream(InputStream in, BooleanSupplier isCancelled)
+    {
+        super(in);
+        this.isCancelled = isCancelled;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        checkCancelled();
+        return super.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        checkCancelled();
+        return super.read(b, off, len);
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        checkCancelled();
+        return super.skip(n);
+    }
+
+    /**
+     * Throws if the request was cancelled
+     * @throws InterruptedIOException If the request was cancelled
+     */
+    private void checkCancelled() throws InterruptedIOException
+    {
+        if (isCancelled.getAsBoolean()) {
+            throw new InterruptedIOException("Request was cancelled");
+        }
+    }
+}
@@ -1,15 +1,123 @@
 package ImageSearchFX.ImageSearcher.HTTP;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.CompletionException;
+
 /**
  * Exception that is thrown if *anything* went wrong during an API call
  */
 public class HttpAPIErrorException extends RuntimeException
 {
+    /**
+     * HTTP status code of the response, -1 if there was no response
+     */
+    private final int statusCode;
+
+    /**
+     * Time the API asked to wait before trying again, null if it didn't
+     */
+    private final Duration retryAfter;
+
     /**
      * Constructor
      * @param message Message of the exception
      */
     public HttpAPIErrorException(String message) {
+        this(message, -1, null);
+    }
+
+    /**
+     * Constructor for failures without a response, i.e. timeouts or refused connections
+     * @param message Message of the exception
+     * @param cause   The failure
+     */
+    public HttpAPIErrorException(String message, Throwable cause) {
+        super(message, cause);
+        this.statusCode = -1;
+        this.retryAfter = null;
+    }
+
+    /**
+     * Constructor for error responses
+     * @param message    Message of the exception
+     * @param statusCode HTTP status code of the response
+     * @param retryAfter Time the API asked to wait before trying again, null if it didn't
+     */
+    public HttpAPIErrorException(String message, int statusCode, Duration retryAfter) {
         super(message);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Returns the HTTP status code of the response
+     * @return Status code, -1 if there was no response
+     */
+    public int getStatusCode()
+    {
+        return statusCode;
+    }
+
+    /**
+     * Returns the time the API asked to wait before trying again, from the Retry-After header
+     * @return The time, null if the API didn't ask for it
+     */
+    public Duration getRetryAfter()
+    {
+        return retryAfter;
+    }
+
+    /**
+     * Flag if trying again later may succeed: The API is overloaded (429), failing (5xx) or couldn't be reached
+     * @return True if a retry makes sense
+     */
+    public boolean isRetryable()
+    {
+        if (statusCode == 429 || statusCode >= 500) {
+            return true;
+        }
+
+        Throwable cause = getCause();
+
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+
+        return statusCode == -1 && cause instanceof IOException;
+    }
+
+    /**
+     * Parses the value of a Retry-After header, which is either a number of seconds or an HTTP date
+     * @param header The header value, may be null
+     * @return The time to wait, null if the header is missing or invalid
+     */
+    public static Duration parseRetryAfter(String header)
+    {
+        if (header == null || header.trim().isEmpty()) {
+            return null;
+        }
+
+        String value = header.trim();
+
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            // Not a number, try a date
+        }
+
+        try {
+            Duration wait = Duration.between(
+                ZonedDateTime.now(),
+                ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME)
+            );
+
+            return wait.isNegative() ? Duration.ZERO : wait;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
     }
 }
@@ -0,0 +1,370 @@
+package ImageSearchFX.ImageSearcher.HTTP;
+
+import ImageSearchFX.ImageSearcher.Executor.SearchExecutors;
+import ImageSearchFX.ImageSearcher.HTTP.Abstract.Connector.AbstractConnector;
+import ImageSearchFX.ImageSearcher.HTTP.Abstract.Parser.ParserInterface;
+import ImageSearchFX.ImageSearcher.ImagePage;
+import ImageSearchFX.ImageSearcher.ImageResult;
+import ImageSearchFX.ImageSearcher.ImageSearcherInterface;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Image searcher built on java.net.http.HttpClient. Unlike HttpImageSearcher it doesn't open a new connection per
+ * search: All instances share one client by default, which keeps connections alive, reuses TLS sessions and
+ * multiplexes requests over HTTP/2 where the API supports it. Waiting for the response doesn't block a thread,
+ * only parsing does. Works with the same connectors and parsers as HttpImageSearcher.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class HttpClientImageSearcher implements ImageSearcherInterface
+{
+    /**
+     * Default maximum time to wait for a response
+     */
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * Client shared by all searchers that don't bring their own, created on first use
+     */
+    private static HttpClient sharedClient;
+
+    /**
+     * Executor shared by all searchers that don't bring their own, created on first use
+     */
+    private static Executor sharedParseExecutor;
+
+    /**
+     * Connector to build the requests
+     */
+    private final AbstractConnector connector;
+
+    /**
+     * Parser for response
+     */
+    private final ParserInterface parser;
+
+    /**
+     * Results found by the parser, to look up their sizes and variants by URL
+     */
+    private final ImageResultIndex imageResults = new ImageResultIndex();
+
+    /**
+     * Client the requests are sent with
+     */
+    private final HttpClient client;
+
+    /**
+     * Executor responses are parsed on
+     */
+    private final Executor parseExecutor;
+
+    /**
+     * Maximum time to wait for a response
+     */
+    private Duration requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+
+    /**
+     * Requests that are running, cancelled on close
+     */
+    private final Set<CompletableFuture<?>> runningRequests = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructor, uses the shared client and parse executor
+     * @param connector Builds the requests
+     * @param parser    Parses the response
+     */
+    public HttpClientImageSearcher(AbstractConnector connector, ParserInterface parser)
+    {
+        this(connector, parser, getSharedClient(), getSharedParseExecutor());
+    }
+
+    /**
+     * Constructor
+     * @param connector     Builds the requests
+     * @param parser        Parses the response
+     * @param client        Client to send the requests with
+     * @param parseExecutor Executor to parse responses on, parsing blocks while the body is streamed in
+     */
+    public HttpClientImageSearcher(
+        AbstractConnector connector,
+        ParserInterface parser,
+        HttpClient client,
+        Executor parseExecutor
+    ) {
+        this.connector = connector;
+        this.parser = parser;
+        this.client = client;
+        this.parseExecutor = parseExecutor;
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getUrlsBySearchTerm(String searchTerm, int limit) throws RuntimeException
+    {
+        return getUrlsBySearchTerm(searchTerm, limit, url -> {});
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getUrlsBySearchTerm(
+        String searchTerm,
+        int limit,
+        Consumer<String> urlConsumer
+    ) throws RuntimeException {
+        // Increase limit by 10, do have at least `limit` images
+        final int queryLimit = limit + 10;
+
+        return send(
+            searchTerm,
+            queryLimit,
+            null,
+            urlConsumer,
+            (responseStream, consumer) -> ImageResult.urlsOf(parser.parseResults(responseStream, limit, consumer))
+        );
+    }
+
+    @Override
+    public CompletableFuture<ImagePage> getPage(
+        String searchTerm,
+        int limit,
+        String cursor,
+        Consumer<String> urlConsumer
+    ) throws RuntimeException {
+        // No padding here, the next page starts right after the last image of the requested ones
+        return send(
+            searchTerm,
+            limit,
+            cursor,
+            urlConsumer,
+            (responseStream, consumer) -> parser.parseResultPage(responseStream, limit, cursor, consumer)
+        );
+    }
+
+    /**
+     * Sends a request and reads its response on the parse executor
+     * @param searchTerm  The term to search for
+     * @param queryLimit  Number of images to query
+     * @param cursor      Cursor of the page to query, null for the first one
+     * @param urlConsumer Gets every URL as soon as it's found
+     * @param reader      Reads the result from the response
+     * @return Future of the result
+     */
+    private <T> CompletableFuture<T> send(
+        String searchTerm,
+        int queryLimit,
+        String cursor,
+        Consumer<String> urlConsumer,
+        ResponseReader<T> reader
+    ) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        HttpRequest request;
+
+        try {
+            request = connector.buildRequest(searchTerm, queryLimit, cursor, requestTimeout);
+        } catch (IOException e) {
+            future.completeExceptionally(new HttpAPIErrorException("Could not build request: " + e.getMessage()));
+            return future;
+        }
+
+        AtomicReference<InputStream> openBody = new AtomicReference<>();
+        CompletableFuture<HttpResponse<InputStream>> response = client.sendAsync(
+            request,
+            HttpResponse.BodyHandlers.ofInputStream()
+        );
+
+        response.whenComplete((httpResponse, e) -> {
+            if (future.isCancelled()) {
+                closeQuietly(httpResponse == null ? null : httpResponse.body());
+                return;
+            }
+
+            if (e != null) {
+                future.completeExceptionally(wrapException(e instanceof CompletionException ? e.getCause() : e));
+                return;
+            }
+
+            openBody.set(httpResponse.body());
+
+            try {
+                parseExecutor.execute(() -> parse(httpResponse, reader, urlConsumer, future));
+            } catch (RejectedExecutionException rejected) {
+                closeQuietly(openBody.getAndSet(null));
+                future.completeExceptionally(new HttpAPIErrorException("Search was rejected: " + rejected.getMessage()));
+            }
+        });
+
+        // Cancelling aborts the exchange, or the body stream if the response already arrived
+        future.whenComplete((result, e) -> {
+            runningRequests.remove(future);
+
+            if (future.isCancelled()) {
+                response.cancel(true);
+                closeQuietly(openBody.getAndSet(null));
+            }
+        });
+
+        runningRequests.add(future);
+
+        return future;
+    }
+
+    /**
+     * Parses a response and completes the future with it
+     * @param response    Response with the body not yet read
+     * @param reader      Reads the result from the response
+     * @param urlConsumer Gets every URL as soon as it's found
+     * @param future      Future to complete
+     */
+    private <T> void parse(
+        HttpResponse<InputStream> response,
+        ResponseReader<T> reader,
+        Consumer<String> urlConsumer,
+        CompletableFuture<T> future
+    ) {
+        try (InputStream body = new CancellableInputStream(response.body(), future::isCancelled)) {
+            if (response.statusCode() >= 400) {
+                throw new HttpAPIErrorException(
+                    "HTTP Error " + response.statusCode(),
+                    response.statusCode(),
+                    HttpAPIErrorException.parseRetryAfter(response.headers().firstValue("Retry-After").orElse(null))
+                );
+            }
+
+            future.complete(reader.read(body, result -> {
+                // URLs found after cancelling are of no interest anymore
+                if (!future.isCancelled()) {
+                    imageResults.put(result);
+                    urlConsumer.accept(result.getUrl());
+                }
+            }));
+        } catch (Exception e) {
+            // Failures caused by closing the body are expected when cancelled
+            if (!future.isCancelled()) {
+                future.completeExceptionally(wrapException(e));
+            }
+        }
+    }
+
+    @Override
+    public ImageResult getImageResult(String url)
+    {
+        ImageResult result = imageResults.get(url);
+
+        return result != null ? result : ImageSearcherInterface.super.getImageResult(url);
+    }
+
+    @Override
+    public String getOriginalUrl(String url)
+    {
+        ImageResult result = imageResults.get(url);
+
+        return result != null ? result.getOriginalUrl() : parser.getOriginalUrl(url);
+    }
+
+    @Override
+    public String getProviderName()
+    {
+        // Connectors define which API is queried, the searcher itself is always the same
+        return connector.getProviderName();
+    }
+
+    /**
+     * Cancels all running requests. The client is kept, since it may be shared.
+     */
+    @Override
+    public void close()
+    {
+        for (CompletableFuture<?> request : runningRequests) {
+            request.cancel(true);
+        }
+    }
+
+    /**
+     * Sets the maximum time to wait for a response
+     * @param requestTimeout The timeout
+     */
+    public void setRequestTimeout(Duration requestTimeout)
+    {
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * Returns the client shared by all searchers that don't bring their own
+     * @return The shared client
+     */
+    public static synchronized HttpClient getSharedClient()
+    {
+        if (sharedClient == null) {
+            sharedClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2) // Falls back to HTTP/1.1 with keep-alive if not supported
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        }
+
+        return sharedClient;
+    }
+
+    /**
+     * Returns the parse executor shared by all searchers that don't bring their own
+     * @return The shared executor
+     */
+    private static synchronized Executor getSharedParseExecutor()
+    {
+        if (sharedParseExecutor == null) {
+            sharedParseExecutor = SearchExecutors.newBoundedExecutor(
+                "image-search-parser",
+                2,
+                32,
+                SearchExecutors.RejectionPolicy.ABORT,
+                false
+            );
+        }
+
+        return sharedParseExecutor;
+    }
+
+    /**
+     * Wraps a failure of a request, error responses are handed out as they are to keep their status code
+     * @param e The failure
+     * @return Exception to complete the future with
+     */
+    private static HttpAPIErrorException wrapException(Throwable e)
+    {
+        if (e instanceof HttpAPIErrorException) {
+            return (HttpAPIErrorException) e;
+        }
+
+        return new HttpAPIErrorException("Exception thrown while getting images: " + e.getMessage(), e);
+    }
+
+    /**
+     * Closes a stream and ignores any errors, used to abort reading a body
+     * @param stream The stream, may be null
+     */
+    private static void closeQuietly(InputStream stream)
+    {
+        if (stream == null) {
+            return;
+        }
+
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // Nothing to do, the stream is abandoned anyway
+        }
+    }
+}
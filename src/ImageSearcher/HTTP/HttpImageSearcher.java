@@ -1,16 +1,25 @@
 package ImageSearchFX.ImageSearcher.HTTP;
 
+import ImageSearchFX.ImageSearcher.Executor.SearchExecutors;
 import ImageSearchFX.ImageSearcher.HTTP.Abstract.Connector.AbstractConnector;
 import ImageSearchFX.ImageSearcher.HTTP.Abstract.Parser.ParserInterface;
+import ImageSearchFX.ImageSearcher.ImagePage;
+import ImageSearchFX.ImageSearcher.ImageResult;
 import ImageSearchFX.ImageSearcher.ImageSearcherInterface;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.util.List;
-import java.util.concurrent.CancellationException;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Image searcher to perfom an HTTP request with. Takes a connector and a parser, those need to be compatible.
@@ -30,72 +39,245 @@ public class HttpImageSearcher implements ImageSearcherInterface
     private ParserInterface parser;
 
     /**
-     * Executor for futures
+     * Results found by the parser, to look up their sizes and variants by URL
+     */
+    private final ImageResultIndex imageResults = new ImageResultIndex();
+
+    /**
+     * Executor the requests are performed on
      */
     private ExecutorService executor;
 
+    /**
+     * Flag if the executor was created by this searcher and needs to be shut down on close
+     */
+    private boolean ownsExecutor;
+
+    /**
+     * Requests that are queued or running, cancelled on close
+     */
+    private final Set<CompletableFuture<?>> runningRequests = ConcurrentHashMap.newKeySet();
+
     /**
      * Flag for throttling of responses to simulate slow HTTP connections, nice for debugging
      */
     private boolean throttle = false;
 
+    /**
+     * Constructor, creates a small bounded executor of its own that is shut down on close
+     * @param connector Performs the query
+     * @param parser    Parses the response
+     */
+    public HttpImageSearcher(AbstractConnector connector, ParserInterface parser)
+    {
+        this(
+            connector,
+            parser,
+            SearchExecutors.newBoundedExecutor("image-search", 2, 8, SearchExecutors.RejectionPolicy.DISCARD_OLDEST, false)
+        );
+        this.ownsExecutor = true;
+    }
+
     /**
      * Constructor
      * @param connector Performs the query
      * @param parser    Parses the response
-     * @param executor  Executor service for futures
+     * @param executor  Executor the requests are performed on, the requests block while waiting for the response.
+     *                  Isn't shut down on close, since it may be shared.
      */
     public HttpImageSearcher(AbstractConnector connector, ParserInterface parser, ExecutorService executor)
     {
         this.connector = connector;
         this.parser = parser;
         this.executor = executor;
+        this.ownsExecutor = false;
     }
 
     @Override
     public CompletableFuture<List<String>> getUrlsBySearchTerm(String searchTerm, int limit) throws RuntimeException
     {
+        return getUrlsBySearchTerm(searchTerm, limit, url -> {});
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getUrlsBySearchTerm(
+        String searchTerm,
+        int limit,
+        Consumer<String> urlConsumer
+    ) throws RuntimeException {
         // Increase limit by 10, do have at least `limit` images
         final int queryLimit = limit + 10;
-        final int definiteLimit = limit;
 
+        return request(
+            searchTerm,
+            queryLimit,
+            null,
+            urlConsumer,
+            (responseStream, consumer) -> ImageResult.urlsOf(parser.parseResults(responseStream, limit, consumer))
+        );
+    }
+
+    @Override
+    public CompletableFuture<ImagePage> getPage(
+        String searchTerm,
+        int limit,
+        String cursor,
+        Consumer<String> urlConsumer
+    ) throws RuntimeException {
+        // No padding here, the next page starts right after the last image of the requested ones
+        return request(
+            searchTerm,
+            limit,
+            cursor,
+            urlConsumer,
+            (responseStream, consumer) -> parser.parseResultPage(responseStream, limit, cursor, consumer)
+        );
+    }
+
+    /**
+     * Performs a request on the executor and reads its response
+     * @param searchTerm  The term to search for
+     * @param queryLimit  Number of images to query
+     * @param cursor      Cursor of the page to query, null for the first one
+     * @param urlConsumer Gets every URL as soon as it's found
+     * @param reader      Reads the result from the response
+     * @return Future of the result
+     */
+    private <T> CompletableFuture<T> request(
+        String searchTerm,
+        int queryLimit,
+        String cursor,
+        Consumer<String> urlConsumer,
+        ResponseReader<T> reader
+    ) {
         // An async future is used here to have the possibility to interrupt a search, so images don't get overwritten
         // multiple times while typing. Only the last search is relevant.
-        CompletableFuture<List<String>> future = CompletableFuture.supplyAsync(() -> {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        AtomicReference<HttpURLConnection> openConnection = new AtomicReference<>();
+
+        FutureTask<Void> task = new FutureTask<Void>(() -> {
+            HttpURLConnection connection = null;
+
             try {
                 if (throttle) {
-                    TimeUnit.MILLISECONDS.sleep(500 + (int)(Math.random() * 1500));
+                    throttle(future);
                 }
 
-                HttpURLConnection connection = connector.buildConnection(searchTerm, queryLimit);
-                InputStream responseStream = performRequest(connection);
+                if (future.isCancelled()) {
+                    return;
+                }
 
-                List<String> urls = parser.parseResponse(responseStream, definiteLimit);
+                connection = connector.buildConnection(searchTerm, queryLimit, cursor);
+                openConnection.set(connection);
 
-                // Disconnect again to not run into memory issues
-                connection.disconnect();
+                // Could have been cancelled before the connection was known to the cancel handler
+                if (future.isCancelled()) {
+                    return;
+                }
+
+                InputStream responseStream = new CancellableInputStream(performRequest(connection), future::isCancelled);
+
+                if (future.isCancelled()) {
+                    return;
+                }
 
-                return urls;
+                future.complete(reader.read(responseStream, result -> {
+                    // URLs found after cancelling are of no interest anymore
+                    if (!future.isCancelled()) {
+                        imageResults.put(result);
+                        urlConsumer.accept(result.getUrl());
+                    }
+                }));
             } catch (Exception e) {
-                throw new HttpAPIErrorException("Exception thrown while getting images: " + e.getMessage());
+                // Failures caused by aborting the connection are expected when cancelled
+                if (!future.isCancelled()) {
+                    future.completeExceptionally(wrapException(e));
+                }
+            } finally {
+                // Disconnect again to not run into memory issues
+                if (connection != null && openConnection.compareAndSet(connection, null)) {
+                    connection.disconnect();
+                }
             }
-        });
+        }, null) {
+            @Override
+            protected void done()
+            {
+                // Cancelled while still queued, i.e. dropped by the executor's rejection policy
+                if (isCancelled()) {
+                    future.cancel(false);
+                }
+            }
+        };
 
-        // Execute the future
-        executor.execute(() -> {
-            try {
-                future.get();
-            } catch (CancellationException e) {
-                // Do nothing, as the execution of the future was cancelled, which is
-                // expected behaviour when a new search is triggered
-            } catch (Exception e) {
-                throw new HttpAPIErrorException(e.getMessage());
+        // Cancelling the future aborts the connection, so a blocking connect or read fails right away instead of
+        // downloading and parsing a response that is thrown away anyway. Queued searches are simply dropped.
+        future.whenComplete((result, e) -> {
+            runningRequests.remove(future);
+
+            if (future.isCancelled()) {
+                task.cancel(false);
+
+                if (executor instanceof ThreadPoolExecutor) {
+                    ((ThreadPoolExecutor) executor).remove(task);
+                }
+
+                HttpURLConnection connection = openConnection.getAndSet(null);
+
+                if (connection != null) {
+                    connection.disconnect();
+                }
             }
         });
 
+        runningRequests.add(future);
+
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new HttpAPIErrorException("Search was rejected: " + e.getMessage()));
+        }
+
         return future;
     }
 
+    @Override
+    public ImageResult getImageResult(String url)
+    {
+        ImageResult result = imageResults.get(url);
+
+        return result != null ? result : ImageSearcherInterface.super.getImageResult(url);
+    }
+
+    @Override
+    public String getOriginalUrl(String url)
+    {
+        ImageResult result = imageResults.get(url);
+
+        return result != null ? result.getOriginalUrl() : parser.getOriginalUrl(url);
+    }
+
+    @Override
+    public String getProviderName()
+    {
+        // Connectors define which API is queried, the searcher itself is always the same
+        return connector.getProviderName();
+    }
+
+    /**
+     * Cancels all queued and running requests and shuts down the executor, if it was created by this searcher
+     */
+    @Override
+    public void close()
+    {
+        for (CompletableFuture<?> request : runningRequests) {
+            request.cancel(true);
+        }
+
+        if (ownsExecutor) {
+            executor.shutdownNow();
+        }
+    }
 
     /**
      * Performs a request and returns its response body
@@ -108,12 +290,44 @@ public class HttpImageSearcher implements ImageSearcherInterface
         connection.connect();
 
         if (connection.getResponseCode() >= 400) {
-            throw new HttpAPIErrorException("HTTP Error " + connection.getResponseCode() + ": " + connection.getResponseMessage());
+            throw new HttpAPIErrorException(
+                "HTTP Error " + connection.getResponseCode() + ": " + connection.getResponseMessage(),
+                connection.getResponseCode(),
+                HttpAPIErrorException.parseRetryAfter(connection.getHeaderField("Retry-After"))
+            );
         }
 
         return connection.getInputStream();
     }
 
+    /**
+     * Wraps a failure of a request, error responses are handed out as they are to keep their status code
+     * @param e The failure
+     * @return Exception to complete the future with
+     */
+    private static HttpAPIErrorException wrapException(Throwable e)
+    {
+        if (e instanceof HttpAPIErrorException) {
+            return (HttpAPIErrorException) e;
+        }
+
+        return new HttpAPIErrorException("Exception thrown while getting images: " + e.getMessage(), e);
+    }
+
+    /**
+     * Sleeps for a random time to simulate slow connections, wakes up early if the request is cancelled
+     * @param future Future of the request
+     * @throws InterruptedException
+     */
+    private void throttle(CompletableFuture<?> future) throws InterruptedException
+    {
+        long wakeUp = System.currentTimeMillis() + 500 + (int)(Math.random() * 1500);
+
+        while (!future.isCancelled() && System.currentTimeMillis() < wakeUp) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+    }
+
     /**
      * Sets throttling flag to true, simulates slow HTTP connections
      */
@@ -0,0 +1,79 @@
+package ImageSearchFX.ImageSearcher.HTTP;
+
+import ImageSearchFX.ImageSearcher.ImageResult;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the results the parsers found, so the HTTP searchers can look them up by URL. Searches only hand out
+ * URLs, which keeps decorators like caches and fan-outs simple, the rest of a result is fetched by URL afterwards.
+ * Bounded, the least recently used results are dropped first.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+class ImageResultIndex
+{
+    /**
+     * Default maximum number of results kept
+     */
+    static final int DEFAULT_MAX_RESULTS = 2048;
+
+    /**
+     * Results by their URL and the URLs of all of their variants, in access order
+     */
+    private final Map<String, ImageResult> results;
+
+    /**
+     * Default constructor
+     */
+    ImageResultIndex()
+    {
+        this(DEFAULT_MAX_RESULTS);
+    }
+
+    /**
+     * Constructor
+     * @param maxResults Maximum number of results kept
+     */
+    ImageResultIndex(int maxResults)
+    {
+        // Every result takes a few entries, one per variant
+        int maxEntries = maxResults * 4;
+
+        results = new LinkedHashMap<String, ImageResult>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ImageResult> eldest)
+            {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Adds a result, results without anything but a URL aren't worth remembering
+     * @param result The result
+     */
+    synchronized void put(ImageResult result)
+    {
+        if (!result.hasMetadata()) {
+            return;
+        }
+
+        for (ImageResult.Variant variant : result.getVariants()) {
+            results.put(variant.getUrl(), result);
+        }
+
+        results.put(result.getUrl(), result);
+    }
+
+    /**
+     * Looks up a result by its URL or the URL of one of its variants
+     * @param url The URL
+     * @return The result, null if it's unknown
+     */
+    synchronized ImageResult get(String url)
+    {
+        return results.get(url);
+    }
+}
@@ -1,10 +1,12 @@
 package ImageSearchFX.ImageSearcher.HTTP.Pexels.Connector;
 
 import ImageSearchFX.ImageSearcher.HTTP.Abstract.Connector.AbstractConnector;
+import ImageSearchFX.ImageSearcher.RateLimit.TokenBucket;
 
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -16,9 +18,19 @@ import java.util.Map;
 public class PexelsConnector extends AbstractConnector
 {
     /**
-     * API key for Pexel API - this is Pascal Thormeier's private one, please don't abuse...
+     * Default API key for Pexel API - this is Pascal Thormeier's private one, please don't abuse...
      */
-    private final String API_KEY = "563492ad6f9170000100000100b8bc64db6743e976e3e78cfa475b79";
+    public static final String DEFAULT_API_KEY = "563492ad6f9170000100000100b8bc64db6743e976e3e78cfa475b79";
+
+    /**
+     * Number of requests Pexels allows per API key and hour
+     */
+    public static final int REQUESTS_PER_HOUR = 200;
+
+    /**
+     * API key used for all requests
+     */
+    private final String apiKey;
 
     /**
      * Protocol to be used for API requests
@@ -42,10 +54,20 @@ public class PexelsConnector extends AbstractConnector
     private final String USER_AGENT = "javafx-custom-control-thormeier";
 
     /**
-     * Constructor, overwrites java's user agent
+     * Constructor, uses the default API key and overwrites java's user agent
      */
     public PexelsConnector()
     {
+        this(DEFAULT_API_KEY);
+    }
+
+    /**
+     * Constructor, overwrites java's user agent
+     * @param apiKey API key to use for all requests
+     */
+    public PexelsConnector(String apiKey)
+    {
+        this.apiKey = apiKey;
         System.setProperty("http.agent", USER_AGENT);
     }
 
@@ -61,11 +83,38 @@ public class PexelsConnector extends AbstractConnector
         return new URL(PROTOCOL + "://" + HOST + "/" + PATH + "?" + query);
     }
 
+    @Override
+    protected URL buildUrl(String searchTerm, int limit, String cursor) throws IOException
+    {
+        if (cursor == null) {
+            return buildUrl(searchTerm, limit);
+        }
+
+        // Pages are numbered from 1, each one has `per_page` images
+        int page;
+
+        try {
+            page = Integer.parseInt(cursor);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid Pexels page: " + cursor, e);
+        }
+
+        return new URL(buildUrl(searchTerm, limit) + "&page=" + page);
+    }
+
+    @Override
+    public TokenBucket getRateLimit()
+    {
+        // The quota is per key, so all connectors with the same key share it
+        return TokenBucket.shared("pexels:" + apiKey, REQUESTS_PER_HOUR, Duration.ofHours(1));
+    }
+
     @Override
     protected Map<String, String> getHeaders()
     {
         HashMap<String, String> headers = new HashMap<>();
-        headers.put("Authorization", API_KEY);
+        headers.put("Authorization", apiKey);
+        headers.put("User-Agent", USER_AGENT); // http.agent is ignored by java.net.http.HttpClient
 
         return headers;
     }
@@ -1,16 +1,20 @@
 package ImageSearchFX.ImageSearcher.HTTP.Pexels.Parser;
 
+import ImageSearchFX.ImageSearcher.HTTP.Abstract.Parser.JsonTokenizer;
 import ImageSearchFX.ImageSearcher.HTTP.Abstract.Parser.ParserInterface;
+import ImageSearchFX.ImageSearcher.ImagePage;
+import ImageSearchFX.ImageSearcher.ImageResult;
 import org.xml.sax.SAXException;
 import javax.xml.parsers.ParserConfigurationException;
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Parser specifically for Pexels API
@@ -19,35 +23,193 @@ import java.util.regex.Pattern;
  */
 public class PexelsParser implements ParserInterface
 {
+    /**
+     * Default image variant, small square thumbnails fit the tiles best
+     */
+    public static final String DEFAULT_VARIANT = "square";
+
+    /**
+     * Name of the image variant in a photo's `src` object, i.e. square, medium or original
+     */
+    private final String variant;
+
+    /**
+     * Default constructor, returns square thumbnails
+     */
+    public PexelsParser()
+    {
+        this(DEFAULT_VARIANT);
+    }
+
+    /**
+     * Constructor
+     * @param variant Name of the image variant in a photo's `src` object, i.e. square, medium or original
+     */
+    public PexelsParser(String variant)
+    {
+        this.variant = variant;
+    }
+
     @Override
     public List<String> parseResponse(InputStream responseStream, int limit) throws ParserConfigurationException, IOException, SAXException
     {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(responseStream));
+        return parseResponse(responseStream, limit, url -> {});
+    }
 
-        String line, fullResponse = "";
+    @Override
+    public List<String> parseResponse(InputStream responseStream, int limit, Consumer<String> urlConsumer) throws ParserConfigurationException, IOException, SAXException
+    {
+        return ImageResult.urlsOf(parseResults(responseStream, limit, result -> urlConsumer.accept(result.getUrl())));
+    }
 
-        while ((line = reader.readLine()) != null) {
-            fullResponse += line;
-        }
+    @Override
+    public List<ImageResult> parseResults(InputStream responseStream, int limit, Consumer<ImageResult> resultConsumer) throws ParserConfigurationException, IOException, SAXException
+    {
+        // Since Java doesn't come with JSON parser, tokenize the stream and only pick out the sizes and the URLs in
+        // `src` of every photo. Reading stops as soon as there are enough, the rest of the response is never looked at.
+        JsonTokenizer tokenizer = new JsonTokenizer(new InputStreamReader(responseStream, StandardCharsets.UTF_8));
+        List<ImageResult> results = new ArrayList<>();
 
-        List<String> urls = new ArrayList<>();
+        int srcDepth = -1; // Depth of the `src` object currently read, -1 if outside of one
+        int width = 0;
+        int height = 0;
+        Map<String, String> src = new HashMap<>();
+        JsonTokenizer.Token token;
 
-        // Since Java doesn't come with JSON parser, simply use regex here to get out the URLs
-        // String in quotes (i.e. original, square, etc.) is image type in response.
-        Pattern pattern = Pattern.compile("[\"]?square[\"]?:[\\s]*\"([-a-zA-Z0-9@:%_\\+.~#?&//=]*)\"", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE | Pattern.DOTALL);
-        Matcher matcher = pattern.matcher(fullResponse);
+        while (results.size() < limit && (token = tokenizer.next()) != JsonTokenizer.Token.END_DOCUMENT) {
+            // End of `src`, which comes after the size of the photo, so the photo is complete
+            if (token == JsonTokenizer.Token.END_OBJECT && tokenizer.getDepth() < srcDepth) {
+                srcDepth = -1;
 
-        int foundImages = 0;
-        while (matcher.find()) {
-            urls.add(fullResponse.substring(matcher.start(1), matcher.end(1)));
+                ImageResult result = buildResult(src, width, height);
+                if (result != null) {
+                    results.add(result);
+                    resultConsumer.accept(result);
+                }
 
-            foundImages++;
+                src.clear();
+                width = 0;
+                height = 0;
+                continue;
+            }
 
-            if (foundImages == limit) { // We don't need more images, limit is reached
-                break;
+            if (token != JsonTokenizer.Token.NAME) {
+                continue;
             }
+
+            if (srcDepth == -1) {
+                if (tokenizer.textEquals("src")) {
+                    srcDepth = tokenizer.getDepth() + 1;
+                } else if (tokenizer.textEquals("width")) {
+                    width = readInt(tokenizer);
+                } else if (tokenizer.textEquals("height")) {
+                    height = readInt(tokenizer);
+                }
+
+                continue;
+            }
+
+            if (srcDepth == tokenizer.getDepth()) {
+                String name = tokenizer.getText();
+
+                if (tokenizer.next() == JsonTokenizer.Token.STRING) {
+                    src.put(name, tokenizer.getText());
+                }
+            }
+        }
+
+        return results;
+    }
+
+    @Override
+    public ImagePage parseResultPage(InputStream responseStream, int limit, String cursor, Consumer<ImageResult> resultConsumer) throws ParserConfigurationException, IOException, SAXException
+    {
+        int page = cursor == null ? 1 : Integer.parseInt(cursor);
+        List<String> urls = ImageResult.urlsOf(parseResults(responseStream, limit, resultConsumer));
+
+        // `next_page` is only sent after all photos, which aren't read to the end. A full page is as good a hint.
+        return new ImagePage(urls, urls.size() >= limit ? String.valueOf(page + 1) : null);
+    }
+
+    @Override
+    public ImagePage parsePage(InputStream responseStream, int limit, String cursor, Consumer<String> urlConsumer) throws ParserConfigurationException, IOException, SAXException
+    {
+        return parseResultPage(responseStream, limit, cursor, result -> urlConsumer.accept(result.getUrl()));
+    }
+
+    /**
+     * Builds the result of a photo. The sizes of the proportional variants in `src` aren't sent, but they are
+     * scaled versions of the original with fixed bounds, so they are derived from its size.
+     * @param src    URLs in `src` by variant name
+     * @param width  Width of the original, 0 if unknown
+     * @param height Height of the original, 0 if unknown
+     * @return The result, null if the photo doesn't have the configured variant
+     */
+    private ImageResult buildResult(Map<String, String> src, int width, int height)
+    {
+        String url = src.get(variant);
+
+        if (url == null) {
+            return null;
         }
 
-        return urls;
+        ImageResult result = new ImageResult(url);
+        result.setSize(width, height);
+
+        String original = src.get("original");
+        if (original != null) {
+            result.setOriginalUrl(original);
+            result.addVariant(original, width, height);
+        }
+
+        addScaledVariant(result, src.get("large2x"), width, height, 1880, 1300);
+        addScaledVariant(result, src.get("large"), width, height, 940, 650);
+        addScaledVariant(result, src.get("medium"), width, height, Integer.MAX_VALUE, 350);
+        addScaledVariant(result, src.get("small"), width, height, Integer.MAX_VALUE, 130);
+
+        return result;
+    }
+
+    /**
+     * Adds a variant that is the original scaled down to fit into bounds
+     * @param result    The result to add it to
+     * @param url       URL of the variant, nothing is added if null
+     * @param width     Width of the original, 0 if unknown
+     * @param height    Height of the original, 0 if unknown
+     * @param maxWidth  Maximum width of the variant
+     * @param maxHeight Maximum height of the variant
+     */
+    private static void addScaledVariant(ImageResult result, String url, int width, int height, int maxWidth, int maxHeight)
+    {
+        if (url == null) {
+            return;
+        }
+
+        if (width <= 0 || height <= 0) {
+            result.addVariant(url, 0, 0);
+            return;
+        }
+
+        double scale = Math.min(1, Math.min((double) maxWidth / width, (double) maxHeight / height));
+        result.addVariant(url, (int) Math.round(width * scale), (int) Math.round(height * scale));
+    }
+
+    /**
+     * Reads the number following a NAME token
+     * @param tokenizer The tokenizer
+     * @return The number, 0 if the value isn't one
+     * @throws IOException
+     */
+    private static int readInt(JsonTokenizer tokenizer) throws IOException
+    {
+        if (tokenizer.next() != JsonTokenizer.Token.NUMBER) {
+            return 0;
+        }
+
+        try {
+            return (int) Double.parseDouble(tokenizer.getText());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
     }
 }
@@ -0,0 +1,25 @@
+package ImageSearchFX.ImageSearcher.HTTP;
+
+import ImageSearchFX.ImageSearcher.ImageResult;
+
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * Reads the result of a search from a response body, used by the HTTP searchers to share the request handling
+ * between plain searches and single pages.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+@FunctionalInterface
+interface ResponseReader<T>
+{
+    /**
+     * Reads the result
+     * @param responseStream Body of the response
+     * @param resultConsumer Gets every image as soon as it's found
+     * @return The result
+     * @throws Exception In case the response can't be read
+     */
+    T read(InputStream responseStream, Consumer<ImageResult> resultConsumer) throws Exception;
+}
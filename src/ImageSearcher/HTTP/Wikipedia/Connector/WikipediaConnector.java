@@ -9,7 +9,9 @@ import java.util.HashMap;
 import java.util.Map;
 
 /**
- * Connector class specifically for Wikipedia API
+ * Connector class specifically for Wikipedia API. By default it lists the original files, which are often several
+ * megabytes large. In thumbnail mode it asks the API for URLs of thumbnails scaled to a given width instead, the
+ * originals can still be found with WikipediaParser.getOriginalUrl().
  *
  * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
  */
@@ -35,11 +37,46 @@ public class WikipediaConnector extends AbstractConnector
      */
     private final String charset = "UTF-8";
 
+    /**
+     * Maximum number of scaled thumbnails the API returns per request, images beyond it would come without one
+     */
+    public static final int MAX_THUMBNAILS_PER_REQUEST = 50;
+
+    /**
+     * Width of the requested thumbnails in pixels, 0 to list the original files
+     */
+    private final int thumbnailWidth;
+
+    /**
+     * Default constructor, lists the original files
+     */
+    public WikipediaConnector()
+    {
+        this(0);
+    }
+
+    /**
+     * Constructor for thumbnail mode
+     * @param thumbnailWidth Width of the requested thumbnails in pixels, i.e. the tile size, 0 for the originals
+     */
+    public WikipediaConnector(int thumbnailWidth)
+    {
+        if (thumbnailWidth < 0) {
+            throw new IllegalArgumentException("Thumbnail width must not be negative");
+        }
+
+        this.thumbnailWidth = thumbnailWidth;
+    }
+
     @Override
     protected URL buildUrl(String searchTerm, int limit) throws IOException
     {
+        if (isThumbnailMode()) {
+            return buildThumbnailUrl(searchTerm, limit);
+        }
+
         String query = String.format(
-                "action=query&format=%s&list=allimages&aiprop=url|mime&aifrom=%s&ailimit=%d",
+                "action=query&format=%s&list=allimages&aiprop=url%%7Cmime%%7Csize&aifrom=%s&ailimit=%d",
                 "xml", // Response format, JSON is rather hard to parse without 3rd party libraries, but xml is quite simple
                 URLEncoder.encode(searchTerm, charset), // Encode to prevent highjacking of the URL
                 limit // maximum number of images
@@ -48,6 +85,65 @@ public class WikipediaConnector extends AbstractConnector
         return new URL(protocol + "://" + host + "/" + path + "?" + query);
     }
 
+    @Override
+    protected URL buildUrl(String searchTerm, int limit, String cursor) throws IOException
+    {
+        if (cursor == null) {
+            return buildUrl(searchTerm, limit);
+        }
+
+        // The continuation token of the previous response, the listing goes on where that one ended
+        String parameter = isThumbnailMode() ? "&gaicontinue=" : "&aicontinue=";
+
+        return new URL(buildUrl(searchTerm, limit) + parameter + URLEncoder.encode(cursor, charset));
+    }
+
+    /**
+     * Builds the URL of thumbnail mode: The image listing is used as a generator for an image info query, which
+     * adds a thumbnail URL to every image, scaled by the API's image servers.
+     * @param searchTerm Phrase to search for
+     * @param limit      Maximum number of images, capped at MAX_THUMBNAILS_PER_REQUEST
+     * @return URL to build a connection with
+     * @throws IOException
+     */
+    private URL buildThumbnailUrl(String searchTerm, int limit) throws IOException
+    {
+        String query = String.format(
+                "action=query&format=%s&generator=allimages&gaifrom=%s&gailimit=%d&prop=imageinfo&iiprop=url%%7Cmime%%7Csize&iiurlwidth=%d",
+                "xml",
+                URLEncoder.encode(searchTerm, charset),
+                Math.min(limit, MAX_THUMBNAILS_PER_REQUEST),
+                thumbnailWidth
+        );
+
+        return new URL(protocol + "://" + host + "/" + path + "?" + query);
+    }
+
+    @Override
+    public String getProviderName()
+    {
+        // Thumbnail URLs differ from the originals, so they must not end up in the same cache entries
+        return isThumbnailMode() ? super.getProviderName() + "?thumbnailWidth=" + thumbnailWidth : super.getProviderName();
+    }
+
+    /**
+     * Flag if thumbnails are requested instead of the original files
+     * @return True in thumbnail mode
+     */
+    public boolean isThumbnailMode()
+    {
+        return thumbnailWidth > 0;
+    }
+
+    /**
+     * Returns the width of the requested thumbnails
+     * @return Width in pixels, 0 if the original files are listed
+     */
+    public int getThumbnailWidth()
+    {
+        return thumbnailWidth;
+    }
+
     @Override
     protected Map<String, String> getHeaders()
     {
@@ -13,10 +13,25 @@ import ImageSearchFX.ImageSearcher.HTTP.Wikipedia.Parser.WikipediaParser;
  */
 public class WikipediaHttpImageSearcherFactory extends AbstractHttpImageSearcherFactory
 {
+    /**
+     * Width of the requested thumbnails in pixels, 0 to load the original files
+     */
+    private int thumbnailWidth = 0;
+
     @Override
     public AbstractConnector getConnector()
     {
-        return new WikipediaConnector();
+        return new WikipediaConnector(thumbnailWidth);
+    }
+
+    /**
+     * Switches searchers created afterwards to thumbnail mode, see WikipediaConnector. The width should match the
+     * tile size, times the output scale on HiDPI screens.
+     * @param thumbnailWidth Width of the requested thumbnails in pixels, 0 to load the original files
+     */
+    public void setThumbnailWidth(int thumbnailWidth)
+    {
+        this.thumbnailWidth = thumbnailWidth;
     }
 
     @Override
@@ -1,64 +1,257 @@
 package ImageSearchFX.ImageSearcher.HTTP.Wikipedia.Parser;
 
-import ImageSearchFX.ImageSearcher.HTTP.Abstract.Connector.AbstractConnector;
 import ImageSearchFX.ImageSearcher.HTTP.Abstract.Parser.ParserInterface;
-import ImageSearchFX.ImageSearcher.HTTP.Wikipedia.Connector.WikipediaConnector;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import ImageSearchFX.ImageSearcher.ImagePage;
+import ImageSearchFX.ImageSearcher.ImageResult;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
- * Parser specifically for Wikipedia API
+ * Parser specifically for Wikipedia API. Reads both the plain image listing and the image info query of thumbnail
+ * mode, see WikipediaConnector.
  *
  * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
  */
 public class WikipediaParser implements ParserInterface
 {
+    /**
+     * Factory for stream readers, configured once and shared, creating readers is thread safe
+     */
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    /**
+     * Path segment of scaled thumbnails on the image servers, i.e. .../commons/thumb/a/ab/File.jpg/300px-File.jpg
+     */
+    private static final String THUMBNAIL_SEGMENT = "/thumb/";
+
     @Override
     public List<String> parseResponse(InputStream responseStream, int limit) throws ParserConfigurationException, IOException, SAXException
     {
-        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-        Document document = documentBuilder.parse(responseStream);
+        return parseResponse(responseStream, limit, url -> {});
+    }
+
+    @Override
+    public List<String> parseResponse(InputStream responseStream, int limit, Consumer<String> urlConsumer) throws ParserConfigurationException, IOException, SAXException
+    {
+        return new ArrayList<>(parse(responseStream, limit, result -> urlConsumer.accept(result.getUrl()), false).getUrls());
+    }
+
+    @Override
+    public ImagePage parsePage(InputStream responseStream, int limit, String cursor, Consumer<String> urlConsumer) throws ParserConfigurationException, IOException, SAXException
+    {
+        return parse(responseStream, limit, result -> urlConsumer.accept(result.getUrl()), true);
+    }
+
+    @Override
+    public List<ImageResult> parseResults(InputStream responseStream, int limit, Consumer<ImageResult> resultConsumer) throws ParserConfigurationException, IOException, SAXException
+    {
+        List<ImageResult> results = new ArrayList<>();
 
-        // Parse the XML DOM returned by Wikipedia API
-        NodeList imageNodes = document
-            .getDocumentElement().getChildNodes() // <api>
-            .item(1).getChildNodes() // <query>
-            .item(0).getChildNodes() // <allimages>
-        ;
+        parse(responseStream, limit, result -> {
+            results.add(result);
+            resultConsumer.accept(result);
+        }, false);
+
+        return results;
+    }
 
+    @Override
+    public ImagePage parseResultPage(InputStream responseStream, int limit, String cursor, Consumer<ImageResult> resultConsumer) throws ParserConfigurationException, IOException, SAXException
+    {
+        return parse(responseStream, limit, resultConsumer, true);
+    }
+
+    /**
+     * Streams through a response and picks out the images
+     * @param responseStream Stream of the response
+     * @param limit          Maximum number of images
+     * @param resultConsumer Gets every image as soon as it's found
+     * @param paged          Whether the continuation token is needed, which means the response is read to its end
+     *                       if the token isn't found before the limit is reached
+     * @return The URLs and the continuation token, if any
+     * @throws IOException
+     */
+    private ImagePage parse(InputStream responseStream, int limit, Consumer<ImageResult> resultConsumer, boolean paged) throws IOException
+    {
         List<String> imageUrls = new ArrayList<>();
+        String continueToken = null;
+
+        if (limit <= 0) {
+            return new ImagePage(imageUrls, null);
+        }
+
+        XMLStreamReader reader = null;
+
+        try {
+            reader = INPUT_FACTORY.createXMLStreamReader(responseStream);
+
+            // Stream through the response and only look at <img> elements of the listing or <ii> elements of thumbnail
+            // mode, wherever they are in the tree.
+            // Reading stops as soon as there are enough, the rest of the response is never looked at.
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+
+                // <continue aicontinue="..."/> holds the token of the next page, usually before the images.
+                // In thumbnail mode the listing is a generator, its token is gaicontinue.
+                if (paged && "continue".equals(reader.getLocalName())) {
+                    continueToken = reader.getAttributeValue(null, "aicontinue");
+
+                    if (continueToken == null) {
+                        continueToken = reader.getAttributeValue(null, "gaicontinue");
+                    }
+
+                    if (imageUrls.size() == limit) {
+                        break;
+                    }
+
+                    continue;
+                }
+
+                boolean thumbnail = "ii".equals(reader.getLocalName());
 
-        int foundImages = 0;
-        for (int i = 0; i < imageNodes.getLength(); i++) {
-            Node imageNode = imageNodes.item(i);
-            NamedNodeMap attributes = imageNode.getAttributes();
+                if ((!thumbnail && !"img".equals(reader.getLocalName())) || imageUrls.size() == limit) {
+                    continue;
+                }
 
-            // Filter non-images by mime-type. Mostly it will encounter .ogg files, which are sound files, only JPG
-            if (!attributes.getNamedItem("mime").getNodeValue().contains("image/jpg")
-                    && !attributes.getNamedItem("mime").getNodeValue().contains("image/jpeg")) {
-                continue;
+                // Filter non-images by mime-type. Mostly it will encounter .ogg files, which are sound files, only JPG
+                String mime = reader.getAttributeValue(null, "mime");
+                if (mime == null || (!mime.contains("image/jpg") && !mime.contains("image/jpeg"))) {
+                    continue;
+                }
+
+                // Thumbnails come with the original URL as well, which is only used if the image couldn't be scaled
+                String url = thumbnail ? reader.getAttributeValue(null, "thumburl") : null;
+                if (url == null) {
+                    url = reader.getAttributeValue(null, "url");
+                }
+
+                if (url == null) {
+                    continue;
+                }
+
+                imageUrls.add(url);
+                resultConsumer.accept(readResult(reader, url, mime, thumbnail));
+
+                // We don't need more images, limit is reached. Pages still need the token, if it wasn't found yet.
+                if (imageUrls.size() == limit && (!paged || continueToken != null)) {
+                    break;
+                }
             }
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not parse Wikipedia response: " + e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // Nothing to do, the connection is closed by the searcher anyway
+                }
+            }
+        }
+
+        return new ImagePage(imageUrls, continueToken);
+    }
 
-            imageUrls.add(attributes.getNamedItem("url").getNodeValue());
-            foundImages++;
+    /**
+     * Reads what the API tells about an image from the attributes of its <img> or <ii> element
+     * @param reader    Reader positioned on the element
+     * @param url       URL of the image shown in the tiles
+     * @param mime      Mime type of the image
+     * @param thumbnail Whether the element is an <ii> element of thumbnail mode
+     * @return The result
+     */
+    private ImageResult readResult(XMLStreamReader reader, String url, String mime, boolean thumbnail)
+    {
+        ImageResult result = new ImageResult(url);
+        String originalUrl = reader.getAttributeValue(null, "url");
+        int width = intAttribute(reader, "width");
+        int height = intAttribute(reader, "height");
+
+        result.setOriginalUrl(originalUrl != null ? originalUrl : url);
+        result.setSize(width, height);
+        result.setMime(mime);
 
-            if (foundImages == limit) { // We don't need more images, limit is reached
-                break;
+        String bytes = reader.getAttributeValue(null, "size");
+        if (bytes != null) {
+            try {
+                result.setBytes(Long.parseLong(bytes));
+            } catch (NumberFormatException e) {
+                // Size is optional
             }
         }
 
-        return imageUrls;
+        if (thumbnail && !url.equals(result.getOriginalUrl())) {
+            result.addVariant(url, intAttribute(reader, "thumbwidth"), intAttribute(reader, "thumbheight"));
+        }
+
+        result.addVariant(result.getOriginalUrl(), width, height);
+
+        return result;
+    }
+
+    /**
+     * Reads a numeric attribute
+     * @param reader Reader positioned on an element
+     * @param name   Name of the attribute
+     * @return Its value, 0 if it's missing or not a number
+     */
+    private static int intAttribute(XMLStreamReader reader, String name)
+    {
+        String value = reader.getAttributeValue(null, name);
+
+        if (value == null) {
+            return 0;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the URL of the original file of a thumbnail. Thumbnails are stored next to the original, in a
+     * thumb/ directory named after the file, so the original can be derived without asking the API again.
+     * @param url The URL of a thumbnail, or of any other image
+     * @return The URL of the original, the given URL if it's no thumbnail
+     */
+    @Override
+    public String getOriginalUrl(String url)
+    {
+        int thumb = url == null ? -1 : url.indexOf(THUMBNAIL_SEGMENT);
+        int fileName = url == null ? -1 : url.lastIndexOf('/');
+
+        if (thumb < 0 || fileName <= thumb + THUMBNAIL_SEGMENT.length()) {
+            return url;
+        }
+
+        return url.substring(0, thumb + 1) + url.substring(thumb + THUMBNAIL_SEGMENT.length(), fileName);
+    }
+
+    /**
+     * Creates the shared factory, without DTD and external entity support since the API doesn't need them
+     * @return The factory
+     */
+    private static XMLInputFactory createInputFactory()
+    {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+
+        return factory;
     }
 }
@@ -0,0 +1,127 @@
+package ImageSearchFX.ImageSearcher.Hedging;
+
+/**
+ * Limits hedged requests to a share of all searches, so hedging never adds more than that share of load on the
+ * provider, even if it becomes slow as a whole. May be shared by several HedgingImageSearchers of the same provider.
+ *
+ * Works like a token bucket filled by searches instead of time: Every search adds `ratio` hedges to the budget, every
+ * hedge takes one. The budget is capped, so hedges a healthy provider didn't need don't pile up. Otherwise a provider
+ * turning slow after thousands of fast searches would get every search hedged for a long time.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class HedgeBudget
+{
+    /**
+     * Default share of searches that may be hedged
+     */
+    public static final double DEFAULT_RATIO = 0.1;
+
+    /**
+     * Default maximum number of hedges saved up
+     */
+    public static final double DEFAULT_MAX_BURST = 5;
+
+    /**
+     * Share of searches that may be hedged
+     */
+    private final double ratio;
+
+    /**
+     * Maximum number of hedges saved up
+     */
+    private final double maxBurst;
+
+    /**
+     * Hedges currently available
+     */
+    private double available = 0;
+
+    /**
+     * Number of searches so far
+     */
+    private long searches = 0;
+
+    /**
+     * Number of hedged requests so far
+     */
+    private long hedges = 0;
+
+    /**
+     * Default constructor, allows hedging DEFAULT_RATIO of all searches
+     */
+    public HedgeBudget()
+    {
+        this(DEFAULT_RATIO);
+    }
+
+    /**
+     * Constructor, saves up at most DEFAULT_MAX_BURST hedges
+     * @param ratio Share of searches that may be hedged, between 0 and 1
+     */
+    public HedgeBudget(double ratio)
+    {
+        this(ratio, DEFAULT_MAX_BURST);
+    }
+
+    /**
+     * Constructor
+     * @param ratio    Share of searches that may be hedged, between 0 and 1
+     * @param maxBurst Maximum number of hedges saved up, i.e. hedged in a row once the provider turns slow
+     */
+    public HedgeBudget(double ratio, double maxBurst)
+    {
+        if (ratio < 0 || ratio > 1) {
+            throw new IllegalArgumentException("Ratio must be between 0 and 1");
+        }
+
+        if (maxBurst < 1) {
+            throw new IllegalArgumentException("Max burst must be at least 1");
+        }
+
+        this.ratio = ratio;
+        this.maxBurst = maxBurst;
+    }
+
+    /**
+     * Counts a search and adds its share of hedges to the budget
+     */
+    public synchronized void recordSearch()
+    {
+        searches++;
+        available = Math.min(maxBurst, available + ratio);
+    }
+
+    /**
+     * Takes a hedge from the budget, if there's one left
+     * @return True if the request may be hedged
+     */
+    public synchronized boolean tryAcquire()
+    {
+        if (available < 1) {
+            return false;
+        }
+
+        available--;
+        hedges++;
+        return true;
+    }
+
+    /**
+     * Returns the number of hedged requests so far
+     * @return Number of hedges
+     */
+    public synchronized long getHedges()
+    {
+        return hedges;
+    }
+
+    /**
+     * Returns the number of searches so far
+     * @return Number of searches
+     */
+    public synchronized long getSearches()
+    {
+        return searches;
+    }
+}
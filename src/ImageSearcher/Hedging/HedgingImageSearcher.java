@@ -0,0 +1,257 @@
+package ImageSearchFX.ImageSearcher.Hedging;
+
+import ImageSearchFX.ImageSearcher.Decorator.AbstractImageSearcherDecorator;
+import ImageSearchFX.ImageSearcher.ImagePage;
+import ImageSearchFX.ImageSearcher.ImageSearcherInterface;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Image searcher that hedges slow searches: If the wrapped searcher didn't answer within the usual latency of the
+ * provider (p95 by default), the same search is started a second time. Whichever answers first wins, the other one
+ * is cancelled. This cuts off the latency tail caused by single slow requests without touching the median, since
+ * only the slowest searches are hedged. A HedgeBudget bounds the additional load on the provider.
+ *
+ * Hedging only starts once enough latencies were observed to tell what's slow.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class HedgingImageSearcher extends AbstractImageSearcherDecorator
+{
+    /**
+     * Default percentile of the observed latencies after which a search is hedged
+     */
+    public static final double DEFAULT_PERCENTILE = 0.95;
+
+    /**
+     * Default number of observed latencies needed before anything is hedged
+     */
+    public static final int DEFAULT_MIN_SAMPLES = 20;
+
+    /**
+     * Default minimum time to wait before hedging, even if the provider is usually faster
+     */
+    public static final Duration DEFAULT_MIN_HEDGE_DELAY = Duration.ofMillis(50);
+
+    /**
+     * Observed latencies of the wrapped searcher
+     */
+    private final LatencyTracker latencies;
+
+    /**
+     * Bounds the number of hedged requests
+     */
+    private final HedgeBudget budget;
+
+    /**
+     * Percentile of the observed latencies after which a search is hedged
+     */
+    private double percentile = DEFAULT_PERCENTILE;
+
+    /**
+     * Number of observed latencies needed before anything is hedged
+     */
+    private int minSamples = DEFAULT_MIN_SAMPLES;
+
+    /**
+     * Minimum time to wait before hedging
+     */
+    private Duration minHedgeDelay = DEFAULT_MIN_HEDGE_DELAY;
+
+    /**
+     * Constructor, uses a budget of its own with the default ratio
+     * @param delegate The searcher to hedge
+     */
+    public HedgingImageSearcher(ImageSearcherInterface delegate)
+    {
+        this(delegate, new HedgeBudget());
+    }
+
+    /**
+     * Constructor
+     * @param delegate The searcher to hedge
+     * @param budget   Bounds the number of hedged requests, may be shared with other searchers of the same provider
+     */
+    public HedgingImageSearcher(ImageSearcherInterface delegate, HedgeBudget budget)
+    {
+        super(delegate);
+        this.budget = budget;
+        this.latencies = new LatencyTracker();
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getUrlsBySearchTerm(String searchTerm, int limit) throws RuntimeException
+    {
+        return getUrlsBySearchTerm(searchTerm, limit, url -> {});
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getUrlsBySearchTerm(
+        String searchTerm,
+        int limit,
+        Consumer<String> urlConsumer
+    ) throws RuntimeException {
+        return hedge(consumer -> delegate.getUrlsBySearchTerm(searchTerm, limit, consumer), urlConsumer);
+    }
+
+    @Override
+    public CompletableFuture<ImagePage> getPage(
+        String searchTerm,
+        int limit,
+        String cursor,
+        Consumer<String> urlConsumer
+    ) throws RuntimeException {
+        return hedge(consumer -> delegate.getPage(searchTerm, limit, cursor, consumer), urlConsumer);
+    }
+
+    /**
+     * Starts a search and hedges it once it takes longer than usual
+     * @param call        Starts the search with a URL consumer
+     * @param urlConsumer Gets every URL as soon as it's found
+     * @return Future of the first successful attempt
+     */
+    private <T> CompletableFuture<T> hedge(Function<Consumer<String>, CompletableFuture<T>> call, Consumer<String> urlConsumer)
+    {
+        budget.recordSearch();
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        List<CompletableFuture<T>> attempts = new CopyOnWriteArrayList<>();
+        AtomicInteger running = new AtomicInteger(0);
+
+        // Both attempts find mostly the same URLs, each one is handed out once
+        Set<String> handedOut = ConcurrentHashMap.newKeySet();
+        Consumer<String> consumer = url -> {
+            if (!future.isDone() && handedOut.add(url)) {
+                urlConsumer.accept(url);
+            }
+        };
+
+        Runnable attempt = () -> {
+            long start = System.nanoTime();
+            CompletableFuture<T> search;
+
+            running.incrementAndGet();
+
+            try {
+                search = call.apply(consumer);
+            } catch (RuntimeException e) {
+                search = new CompletableFuture<>();
+                search.completeExceptionally(e);
+            }
+
+            attempts.add(search);
+
+            search.whenComplete((result, e) -> {
+                // Losers and failures are sampled as well, they're the slow ones. A loser took at least until it was
+                // cancelled. Only a caller cancelling the search tells nothing about the provider.
+                if (!future.isCancelled()) {
+                    latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+
+                if (e == null) {
+                    future.complete(result);
+                    return;
+                }
+
+                // The other attempt may still succeed
+                if (running.decrementAndGet() == 0) {
+                    future.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                }
+            });
+
+            // Cancelled while the attempt was started
+            if (future.isDone()) {
+                search.cancel(true);
+            }
+        };
+
+        attempt.run();
+
+        long delay = hedgeDelay();
+
+        if (delay >= 0 && !future.isDone()) {
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> {
+                if (!future.isDone() && budget.tryAcquire()) {
+                    attempt.run();
+                }
+            });
+        }
+
+        // The loser isn't needed anymore, neither are any attempts if the caller cancelled
+        future.whenComplete((result, e) -> {
+            for (CompletableFuture<T> search : attempts) {
+                search.cancel(true);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Determines how long to wait before hedging
+     * @return Delay in milliseconds, -1 if not enough latencies were observed yet
+     */
+    private long hedgeDelay()
+    {
+        if (latencies.getSampleCount() < minSamples) {
+            return -1;
+        }
+
+        return Math.max(latencies.percentile(percentile), minHedgeDelay.toMillis());
+    }
+
+    /**
+     * Returns the observed latencies of the wrapped searcher
+     * @return The tracker
+     */
+    public LatencyTracker getLatencyTracker()
+    {
+        return latencies;
+    }
+
+    /**
+     * Returns the budget of hedged requests
+     * @return The budget
+     */
+    public HedgeBudget getBudget()
+    {
+        return budget;
+    }
+
+    /**
+     * Sets the percentile of the observed latencies after which a search is hedged
+     * @param percentile Percentile between 0 and 1, i.e. 0.95
+     */
+    public void setPercentile(double percentile)
+    {
+        this.percentile = percentile;
+    }
+
+    /**
+     * Sets the number of observed latencies needed before anything is hedged
+     * @param minSamples Number of latencies
+     */
+    public void setMinSamples(int minSamples)
+    {
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * Sets the minimum time to wait before hedging
+     * @param minHedgeDelay The delay
+     */
+    public void setMinHedgeDelay(Duration minHedgeDelay)
+    {
+        this.minHedgeDelay = minHedgeDelay;
+    }
+}
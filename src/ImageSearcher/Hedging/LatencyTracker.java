@@ -0,0 +1,97 @@
+package ImageSearchFX.ImageSearcher.Hedging;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the latencies of the most recent searches of a provider to estimate percentiles, i.e. the p95 after which
+ * a search is considered slow. Old samples are overwritten, so the estimate follows changes of the provider.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class LatencyTracker
+{
+    /**
+     * Default number of samples kept
+     */
+    public static final int DEFAULT_CAPACITY = 128;
+
+    /**
+     * Latest samples in milliseconds, used as a ring buffer
+     */
+    private final long[] samples;
+
+    /**
+     * Index the next sample is written to
+     */
+    private int next = 0;
+
+    /**
+     * Number of valid samples, up to the capacity
+     */
+    private int count = 0;
+
+    /**
+     * Default constructor, keeps DEFAULT_CAPACITY samples
+     */
+    public LatencyTracker()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     * @param capacity Number of samples kept
+     */
+    public LatencyTracker(int capacity)
+    {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+
+        samples = new long[capacity];
+    }
+
+    /**
+     * Records the latency of a search
+     * @param millis Latency in milliseconds
+     */
+    public synchronized void record(long millis)
+    {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    /**
+     * Estimates a percentile of the recorded latencies
+     * @param percentile Percentile between 0 and 1, i.e. 0.95
+     * @return Latency in milliseconds, -1 if nothing was recorded yet
+     */
+    public long percentile(double percentile)
+    {
+        long[] sorted;
+
+        synchronized (this) {
+            if (count == 0) {
+                return -1;
+            }
+
+            sorted = Arrays.copyOf(samples, count);
+        }
+
+        Arrays.sort(sorted);
+
+        int index = (int) Math.ceil(Math.max(0, Math.min(1, percentile)) * sorted.length) - 1;
+
+        return sorted[Math.max(0, index)];
+    }
+
+    /**
+     * Returns the number of recorded samples, up to the capacity
+     * @return Number of samples
+     */
+    public synchronized int getSampleCount()
+    {
+        return count;
+    }
+}
@@ -0,0 +1,61 @@
+package ImageSearchFX.ImageSearcher;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single page of search results and the cursor to fetch the next one with. Cursors are opaque to everything but
+ * the searcher that created them: Pexels uses page numbers, Wikipedia continuation tokens.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public final class ImagePage
+{
+    /**
+     * Image URLs of this page
+     */
+    private final List<String> urls;
+
+    /**
+     * Cursor of the next page, null if this is the last one
+     */
+    private final String nextCursor;
+
+    /**
+     * Constructor
+     * @param urls       Image URLs of this page
+     * @param nextCursor Cursor of the next page, null if this is the last one
+     */
+    public ImagePage(List<String> urls, String nextCursor)
+    {
+        this.urls = Collections.unmodifiableList(urls);
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Returns the image URLs of this page
+     * @return Unmodifiable list of image URLs
+     */
+    public List<String> getUrls()
+    {
+        return urls;
+    }
+
+    /**
+     * Returns the cursor to pass to ImageSearcherInterface.getPage() for the next page
+     * @return The cursor, null if this is the last page
+     */
+    public String getNextCursor()
+    {
+        return nextCursor;
+    }
+
+    /**
+     * Flag if there is another page after this one
+     * @return True if there is
+     */
+    public boolean hasMore()
+    {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,335 @@
+package ImageSearchFX.ImageSearcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single search result with everything the provider told about it: The URL shown in the tiles, the original
+ * file, its dimensions, mime type and size, and the differently sized variants the provider offers. Providers that
+ * don't tell anything only fill the URL, every other value is optional.
+ *
+ * Results are built by the parsers before they are handed out, they must not be changed afterwards.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class ImageResult
+{
+    /**
+     * A differently sized version of the image, all variants share the aspect ratio of the original
+     */
+    public static final class Variant
+    {
+        /**
+         * URL of the variant
+         */
+        private final String url;
+
+        /**
+         * Width in pixels, 0 if unknown
+         */
+        private final int width;
+
+        /**
+         * Height in pixels, 0 if unknown
+         */
+        private final int height;
+
+        /**
+         * Constructor
+         * @param url    URL of the variant
+         * @param width  Width in pixels, 0 if unknown
+         * @param height Height in pixels, 0 if unknown
+         */
+        public Variant(String url, int width, int height)
+        {
+            this.url = url;
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * Returns the URL of the variant
+         * @return The URL
+         */
+        public String getUrl()
+        {
+            return url;
+        }
+
+        /**
+         * Returns the width
+         * @return Width in pixels, 0 if unknown
+         */
+        public int getWidth()
+        {
+            return width;
+        }
+
+        /**
+         * Returns the height
+         * @return Height in pixels, 0 if unknown
+         */
+        public int getHeight()
+        {
+            return height;
+        }
+
+        /**
+         * Flag if this variant is at least as large as an image scaled to fit into a box, so it doesn't need to be
+         * scaled up. Variants of unknown size never cover.
+         * @param boxWidth  Width of the box in pixels
+         * @param boxHeight Height of the box in pixels
+         * @return True if it covers the box
+         */
+        boolean covers(double boxWidth, double boxHeight)
+        {
+            if (width <= 0 && height <= 0) {
+                return false;
+            }
+
+            // Scaled to fit, one side touches the box. That side must not be scaled up.
+            return (width > 0 && width >= boxWidth) || (height > 0 && height >= boxHeight);
+        }
+    }
+
+    /**
+     * URL shown in the tiles, the one handed out by the URL based methods of the searchers
+     */
+    private final String url;
+
+    /**
+     * URL of the original file
+     */
+    private String originalUrl;
+
+    /**
+     * Width of the original in pixels, 0 if unknown
+     */
+    private int width = 0;
+
+    /**
+     * Height of the original in pixels, 0 if unknown
+     */
+    private int height = 0;
+
+    /**
+     * Mime type of the original, null if unknown
+     */
+    private String mime = null;
+
+    /**
+     * File size of the original in bytes, -1 if unknown
+     */
+    private long bytes = -1;
+
+    /**
+     * Differently sized versions of the image, including the original if its size is known
+     */
+    private final List<Variant> variants = new ArrayList<>();
+
+    /**
+     * Constructor, the original is the URL itself until told otherwise
+     * @param url URL shown in the tiles
+     */
+    public ImageResult(String url)
+    {
+        this.url = url;
+        this.originalUrl = url;
+    }
+
+    /**
+     * Returns the URLs of a list of results, used to adapt results to the URL based methods of the searchers
+     * @param results The results
+     * @return Their URLs, in the same order
+     */
+    public static List<String> urlsOf(List<ImageResult> results)
+    {
+        List<String> urls = new ArrayList<>(results.size());
+
+        for (ImageResult result : results) {
+            urls.add(result.getUrl());
+        }
+
+        return urls;
+    }
+
+    /**
+     * Returns the URL of the smallest variant that still covers a box, i.e. a tile at the current output scale. Falls
+     * back to the largest known variant if none is large enough, and to the URL itself if no sizes are known.
+     * @param boxWidth  Width of the box in pixels
+     * @param boxHeight Height of the box in pixels
+     * @return URL to load
+     */
+    public String getUrlFor(double boxWidth, double boxHeight)
+    {
+        Variant smallestCovering = null;
+        Variant largest = null;
+
+        for (Variant variant : variants) {
+            if (variant.covers(boxWidth, boxHeight)) {
+                if (smallestCovering == null || sizeOf(variant) < sizeOf(smallestCovering)) {
+                    smallestCovering = variant;
+                }
+            } else if (largest == null || sizeOf(variant) > sizeOf(largest)) {
+                largest = variant;
+            }
+        }
+
+        if (smallestCovering != null) {
+            return smallestCovering.getUrl();
+        }
+
+        return largest != null && sizeOf(largest) > 0 ? largest.getUrl() : url;
+    }
+
+    /**
+     * Returns the aspect ratio, used to reserve space before the image arrives
+     * @return Height per width, 0 if unknown
+     */
+    public double getAspectRatio()
+    {
+        if (width > 0 && height > 0) {
+            return (double) height / width;
+        }
+
+        for (Variant variant : variants) {
+            if (variant.getWidth() > 0 && variant.getHeight() > 0) {
+                return (double) variant.getHeight() / variant.getWidth();
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Flag if the provider told anything beyond the URL
+     * @return True if there is
+     */
+    public boolean hasMetadata()
+    {
+        return width > 0 || height > 0 || mime != null || bytes >= 0 || !variants.isEmpty() || !url.equals(originalUrl);
+    }
+
+    /**
+     * Adds a variant
+     * @param url    URL of the variant
+     * @param width  Width in pixels, 0 if unknown
+     * @param height Height in pixels, 0 if unknown
+     */
+    public void addVariant(String url, int width, int height)
+    {
+        variants.add(new Variant(url, width, height));
+    }
+
+    /**
+     * Returns all variants
+     * @return Unmodifiable list of variants
+     */
+    public List<Variant> getVariants()
+    {
+        return Collections.unmodifiableList(variants);
+    }
+
+    /**
+     * Returns the URL shown in the tiles
+     * @return The URL
+     */
+    public String getUrl()
+    {
+        return url;
+    }
+
+    /**
+     * Returns the URL of the original file
+     * @return The URL
+     */
+    public String getOriginalUrl()
+    {
+        return originalUrl;
+    }
+
+    /**
+     * Sets the URL of the original file
+     * @param originalUrl The URL
+     */
+    public void setOriginalUrl(String originalUrl)
+    {
+        this.originalUrl = originalUrl;
+    }
+
+    /**
+     * Returns the width of the original
+     * @return Width in pixels, 0 if unknown
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * Returns the height of the original
+     * @return Height in pixels, 0 if unknown
+     */
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * Sets the dimensions of the original
+     * @param width  Width in pixels
+     * @param height Height in pixels
+     */
+    public void setSize(int width, int height)
+    {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Returns the mime type of the original
+     * @return The mime type, null if unknown
+     */
+    public String getMime()
+    {
+        return mime;
+    }
+
+    /**
+     * Sets the mime type of the original
+     * @param mime The mime type
+     */
+    public void setMime(String mime)
+    {
+        this.mime = mime;
+    }
+
+    /**
+     * Returns the file size of the original
+     * @return Size in bytes, -1 if unknown
+     */
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * Sets the file size of the original
+     * @param bytes Size in bytes
+     */
+    public void setBytes(long bytes)
+    {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Returns the size of a variant to compare variants with, one side is enough since they share the aspect ratio
+     * @param variant The variant
+     * @return Width, or height if the width is unknown
+     */
+    private static int sizeOf(Variant variant)
+    {
+        return variant.getWidth() > 0 ? variant.getWidth() : variant.getHeight();
+    }
+}
@@ -1,14 +1,16 @@
 package ImageSearchFX.ImageSearcher;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Interface for ImageSearchers, used to query a list of images, either static, by file system or via API call, etc.
  *
  * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
  */
-public interface ImageSearcherInterface
+public interface ImageSearcherInterface extends AutoCloseable
 {
     /**
      * Returns a list of image URLs by a given search term
@@ -18,4 +20,169 @@ public interface ImageSearcherInterface
      * @throws RuntimeException In case something goes wrong while fetching image URLs
      */
     CompletableFuture<List<String>> getUrlsBySearchTerm(String searchTerm, int limit) throws RuntimeException;
+
+    /**
+     * Returns a list of image URLs by a given search term and hands out every URL as soon as it's found, so images
+     * can be shown while the rest of the response is still arriving. Searchers that can't find URLs one by one
+     * hand them out all at once when the search is done, which is what this default implementation does.
+     * @param searchTerm  The term to search for
+     * @param limit       Maximum number of image URLs returned
+     * @param urlConsumer Gets every URL as soon as it's found, may be called on any thread
+     * @return A list of all image URLs as Strings
+     * @throws RuntimeException In case something goes wrong while fetching image URLs
+     */
+    default CompletableFuture<List<String>> getUrlsBySearchTerm(
+        String searchTerm,
+        int limit,
+        Consumer<String> urlConsumer
+    ) throws RuntimeException {
+        CompletableFuture<List<String>> search = getUrlsBySearchTerm(searchTerm, limit);
+        CompletableFuture<List<String>> future = search.thenApply(urls -> {
+            urls.forEach(urlConsumer);
+            return urls;
+        });
+
+        // Cancelling has to reach the actual search
+        future.whenComplete((urls, e) -> {
+            if (future.isCancelled()) {
+                search.cancel(true);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Returns a single page of image URLs by a given search term, used to keep loading results while the user
+     * scrolls instead of fetching everything at once. Searchers that can't page natively are emulated by this
+     * default implementation: The cursor is an offset, every page fetches all URLs up to its end and drops the
+     * ones of previous pages.
+     * @param searchTerm  The term to search for
+     * @param limit       Maximum number of image URLs on this page
+     * @param cursor      Cursor of the page, taken from the previous page, null for the first one
+     * @param urlConsumer Gets every URL of this page as soon as it's found, may be called on any thread
+     * @return The page, with the cursor of the next one
+     * @throws RuntimeException In case something goes wrong while fetching image URLs
+     */
+    default CompletableFuture<ImagePage> getPage(
+        String searchTerm,
+        int limit,
+        String cursor,
+        Consumer<String> urlConsumer
+    ) throws RuntimeException {
+        int offset;
+
+        try {
+            offset = cursor == null ? 0 : Integer.parseInt(cursor);
+        } catch (NumberFormatException e) {
+            CompletableFuture<ImagePage> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalArgumentException("Invalid cursor: " + cursor));
+            return failed;
+        }
+
+        CompletableFuture<List<String>> search = getUrlsBySearchTerm(searchTerm, offset + limit);
+        CompletableFuture<ImagePage> future = search.thenApply(urls -> {
+            List<String> page = new ArrayList<>(
+                urls.subList(Math.min(offset, urls.size()), Math.min(offset + limit, urls.size()))
+            );
+            page.forEach(urlConsumer);
+
+            // Fewer URLs than asked for means there are no more
+            return new ImagePage(page, urls.size() >= offset + limit ? String.valueOf(offset + limit) : null);
+        });
+
+        // Cancelling has to reach the actual search
+        future.whenComplete((page, e) -> {
+            if (future.isCancelled()) {
+                search.cancel(true);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Returns a single page of image URLs by a given search term, see getPage() with a URL consumer
+     * @param searchTerm The term to search for
+     * @param limit      Maximum number of image URLs on this page
+     * @param cursor     Cursor of the page, taken from the previous page, null for the first one
+     * @return The page, with the cursor of the next one
+     * @throws RuntimeException In case something goes wrong while fetching image URLs
+     */
+    default CompletableFuture<ImagePage> getPage(String searchTerm, int limit, String cursor) throws RuntimeException
+    {
+        return getPage(searchTerm, limit, cursor, url -> {});
+    }
+
+    /**
+     * Returns search results with everything the provider tells about the images, i.e. their sizes and variants.
+     * Adapts getUrlsBySearchTerm(), the results are looked up with getImageResult().
+     * @param searchTerm The term to search for
+     * @param limit      Maximum number of results returned
+     * @return A list of results
+     * @throws RuntimeException In case something goes wrong while fetching image URLs
+     */
+    default CompletableFuture<List<ImageResult>> getResultsBySearchTerm(String searchTerm, int limit) throws RuntimeException
+    {
+        CompletableFuture<List<String>> search = getUrlsBySearchTerm(searchTerm, limit);
+        CompletableFuture<List<ImageResult>> future = search.thenApply(urls -> {
+            List<ImageResult> results = new ArrayList<>(urls.size());
+            urls.forEach(url -> results.add(getImageResult(url)));
+            return results;
+        });
+
+        // Cancelling has to reach the actual search
+        future.whenComplete((results, e) -> {
+            if (future.isCancelled()) {
+                search.cancel(true);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Returns everything known about a URL this searcher found, i.e. its size and variants, so skins can pick a
+     * variant that fits the tiles and reserve space before the image arrives. Searchers that only know URLs use
+     * this default, which returns a result without anything but the URL and its original.
+     * @param url URL found by this searcher
+     * @return The result
+     */
+    default ImageResult getImageResult(String url)
+    {
+        ImageResult result = new ImageResult(url);
+        result.setOriginalUrl(getOriginalUrl(url));
+
+        return result;
+    }
+
+    /**
+     * Returns the URL of the full size image behind a URL this searcher found. Searchers that return thumbnails
+     * for the tiles map them back to the originals, so the chosen image is shown in full size. Searchers that
+     * always return full size images use this default.
+     * @param url URL found by this searcher
+     * @return URL of the full size image
+     */
+    default String getOriginalUrl(String url)
+    {
+        return url;
+    }
+
+    /**
+     * Returns a name that identifies the provider behind this searcher, used i.e. to key caches
+     * @return Provider name
+     */
+    default String getProviderName()
+    {
+        return getClass().getName();
+    }
+
+    /**
+     * Releases resources held by this searcher, i.e. threads or connections, and cancels running searches.
+     * The searcher must not be used afterwards.
+     */
+    @Override
+    default void close()
+    {
+    }
 }
@@ -0,0 +1,24 @@
+package ImageSearchFX.ImageSearcher.RateLimit;
+
+import ImageSearchFX.ImageSearcher.HTTP.HttpAPIErrorException;
+
+import java.time.Duration;
+
+/**
+ * Exception for searches rejected by a RateLimitedImageSearcher before they reached the provider. Looks like an
+ * HTTP 429 to callers, but tells nothing about the provider's health, so circuit breakers must not count it.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class RateLimitExceededException extends HttpAPIErrorException
+{
+    /**
+     * Constructor
+     * @param message    Message of the exception
+     * @param retryAfter Time until the next token is available
+     */
+    public RateLimitExceededException(String message, Duration retryAfter)
+    {
+        super(message, 429, retryAfter);
+    }
+}
@@ -0,0 +1,167 @@
+package ImageSearchFX.ImageSearcher.RateLimit;
+
+import ImageSearchFX.ImageSearcher.Decorator.AbstractImageSearcherDecorator;
+import ImageSearchFX.ImageSearcher.ImagePage;
+import ImageSearchFX.ImageSearcher.ImageSearcherInterface;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Image searcher that keeps the wrapped searcher within the quota of its provider. Every search takes a token of a
+ * TokenBucket. If there's none left, the search is queued until one is refilled, without blocking a thread. Searches
+ * that would have to wait longer than maxWait are rejected right away with a RateLimitExceededException, an HTTP 429
+ * as if the provider had rejected them, but without using up the quota.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class RateLimitedImageSearcher extends AbstractImageSearcherDecorator
+{
+    /**
+     * Default maximum time a search is queued
+     */
+    public static final Duration DEFAULT_MAX_WAIT = Duration.ofSeconds(2);
+
+    /**
+     * Bucket of the provider's quota, may be shared
+     */
+    private final TokenBucket bucket;
+
+    /**
+     * Maximum time a search is queued, zero rejects searches right away if there's no token
+     */
+    private Duration maxWait = DEFAULT_MAX_WAIT;
+
+    /**
+     * Constructor
+     * @param delegate The searcher to limit
+     * @param bucket   Bucket of the provider's quota, i.e. TokenBucket.shared() by API key
+     */
+    public RateLimitedImageSearcher(ImageSearcherInterface delegate, TokenBucket bucket)
+    {
+        super(delegate);
+        this.bucket = bucket;
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getUrlsBySearchTerm(String searchTerm, int limit) throws RuntimeException
+    {
+        return getUrlsBySearchTerm(searchTerm, limit, url -> {});
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getUrlsBySearchTerm(
+        String searchTerm,
+        int limit,
+        Consumer<String> urlConsumer
+    ) throws RuntimeException {
+        return limit(() -> delegate.getUrlsBySearchTerm(searchTerm, limit, urlConsumer));
+    }
+
+    @Override
+    public CompletableFuture<ImagePage> getPage(
+        String searchTerm,
+        int limit,
+        String cursor,
+        Consumer<String> urlConsumer
+    ) throws RuntimeException {
+        return limit(() -> delegate.getPage(searchTerm, limit, cursor, urlConsumer));
+    }
+
+    /**
+     * Starts a search once a token is available
+     * @param call Starts the search
+     * @return Future of the search
+     */
+    private <T> CompletableFuture<T> limit(Supplier<CompletableFuture<T>> call)
+    {
+        long wait = bucket.reserve(maxWait);
+
+        if (wait == 0) {
+            return call.get();
+        }
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        if (wait < 0) {
+            Duration retryAfter = bucket.timeUntilAvailable();
+
+            future.completeExceptionally(new RateLimitExceededException(
+                "Rate limit of provider " + getProviderName() + " reached, try again in " + retryAfter.toMillis() + "ms",
+                retryAfter
+            ));
+            return future;
+        }
+
+        AtomicReference<CompletableFuture<T>> started = new AtomicReference<>();
+
+        CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS).execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+
+            CompletableFuture<T> search;
+
+            try {
+                search = call.get();
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                return;
+            }
+
+            started.set(search);
+            search.whenComplete((result, e) -> {
+                if (e == null) {
+                    future.complete(result);
+                } else {
+                    future.completeExceptionally(e);
+                }
+            });
+
+            // Cancelled while the search was started
+            if (future.isCancelled()) {
+                search.cancel(true);
+            }
+        });
+
+        // Cancelled while queued, the token goes back to the bucket. Cancelled later, the search is cancelled too.
+        future.whenComplete((result, e) -> {
+            if (!future.isCancelled()) {
+                return;
+            }
+
+            CompletableFuture<T> search = started.get();
+
+            if (search == null) {
+                bucket.refund();
+            } else {
+                search.cancel(true);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Returns the bucket of the provider's quota
+     * @return The bucket
+     */
+    public TokenBucket getBucket()
+    {
+        return bucket;
+    }
+
+    /**
+     * Sets the maximum time a search is queued
+     * @param maxWait Maximum time, zero rejects searches right away if there's no token
+     */
+    public void setMaxWait(Duration maxWait)
+    {
+        this.maxWait = maxWait;
+    }
+}
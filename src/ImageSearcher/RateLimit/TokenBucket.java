@@ -0,0 +1,157 @@
+package ImageSearchFX.ImageSearcher.RateLimit;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token bucket to keep requests within the quota of an API. The bucket holds up to `capacity` tokens and is refilled
+ * evenly, `capacity` tokens per refill period. Every request takes a token. Requests may reserve a token that isn't
+ * there yet, they have to wait until it's refilled then.
+ *
+ * Quotas are usually per API key, so buckets can be shared by key between all searchers of a JVM.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class TokenBucket
+{
+    /**
+     * Buckets shared by key, i.e. per API key
+     */
+    private static final Map<String, TokenBucket> SHARED = new ConcurrentHashMap<>();
+
+    /**
+     * Maximum number of tokens, the largest burst of requests
+     */
+    private final int capacity;
+
+    /**
+     * Time it takes to refill a single token, in nanoseconds
+     */
+    private final double nanosPerToken;
+
+    /**
+     * Available tokens, negative if tokens are reserved in advance
+     */
+    private double tokens;
+
+    /**
+     * Last time tokens were refilled, in System.nanoTime()
+     */
+    private long lastRefill;
+
+    /**
+     * Constructor, the bucket starts full
+     * @param capacity     Maximum number of tokens
+     * @param refillPeriod Time it takes to refill all tokens
+     */
+    public TokenBucket(int capacity, Duration refillPeriod)
+    {
+        if (capacity <= 0 || refillPeriod.isNegative() || refillPeriod.isZero()) {
+            throw new IllegalArgumentException("Capacity and refill period must be positive");
+        }
+
+        this.capacity = capacity;
+        this.nanosPerToken = (double) refillPeriod.toNanos() / capacity;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Returns the bucket shared by all users of a key, creates it on first use. Later calls with the same key get
+     * the same bucket, regardless of capacity and refill period.
+     * @param key          The key, i.e. the API key of a provider
+     * @param capacity     Maximum number of tokens
+     * @param refillPeriod Time it takes to refill all tokens
+     * @return The bucket
+     */
+    public static TokenBucket shared(String key, int capacity, Duration refillPeriod)
+    {
+        return SHARED.computeIfAbsent(key, k -> new TokenBucket(capacity, refillPeriod));
+    }
+
+    /**
+     * Takes a token if one is available right now
+     * @return True if a token was taken
+     */
+    public synchronized boolean tryAcquire()
+    {
+        return reserve(0) == 0;
+    }
+
+    /**
+     * Reserves a token, possibly one that still needs to be refilled
+     * @param maxWait Maximum time to wait for the token
+     * @return Time to wait until the token may be used in nanoseconds, 0 if right away and -1 if it would take
+     *         longer than maxWait, nothing is reserved then
+     */
+    public synchronized long reserve(Duration maxWait)
+    {
+        return reserve(maxWait.toNanos());
+    }
+
+    /**
+     * Gives back a reserved token that wasn't used, i.e. because the request was cancelled while waiting
+     */
+    public synchronized void refund()
+    {
+        tokens = Math.min(capacity, tokens + 1);
+    }
+
+    /**
+     * Returns the time until a token is available
+     * @return Time to wait, zero if a token is available right now
+     */
+    public synchronized Duration timeUntilAvailable()
+    {
+        refill();
+
+        return tokens >= 1 ? Duration.ZERO : Duration.ofNanos((long) Math.ceil((1 - tokens) * nanosPerToken));
+    }
+
+    /**
+     * Returns the number of tokens available right now
+     * @return Number of tokens, 0 if tokens are reserved in advance
+     */
+    public synchronized int getAvailableTokens()
+    {
+        refill();
+
+        return (int) Math.max(0, Math.floor(tokens));
+    }
+
+    /**
+     * Reserves a token, see reserve(Duration)
+     * @param maxWaitNanos Maximum time to wait for the token in nanoseconds
+     * @return Time to wait in nanoseconds, 0 if right away and -1 if it would take longer than maxWaitNanos
+     */
+    private long reserve(long maxWaitNanos)
+    {
+        refill();
+
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+
+        long wait = (long) Math.ceil((1 - tokens) * nanosPerToken);
+
+        if (wait > maxWaitNanos) {
+            return -1;
+        }
+
+        tokens -= 1;
+        return wait;
+    }
+
+    /**
+     * Adds the tokens refilled since the last call
+     */
+    private void refill()
+    {
+        long now = System.nanoTime();
+
+        tokens = Math.min(capacity, tokens + (now - lastRefill) / nanosPerToken);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,213 @@
+package ImageSearchFX.ImageSearcher.Resilience;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Circuit breaker for a single provider. After a number of failures in a row the circuit opens and searches fail
+ * right away instead of waiting for timeouts of a provider that's down. Once the open duration is over, a single
+ * trial search is let through: If it succeeds the circuit closes again, otherwise it stays open for another round.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class CircuitBreaker
+{
+    /**
+     * States of the circuit
+     */
+    public enum State
+    {
+        /**
+         * Searches pass, failures are counted
+         */
+        CLOSED,
+
+        /**
+         * Searches fail right away
+         */
+        OPEN,
+
+        /**
+         * A single trial search passes to find out if the provider is back
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Default number of failures in a row that open the circuit
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /**
+     * Default time the circuit stays open before a trial search is let through
+     */
+    public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(30);
+
+    /**
+     * Returned by tryAcquire() if the circuit is open
+     */
+    public static final long NO_PERMIT = -1;
+
+    /**
+     * Breakers shared by all searchers of a provider, by provider name
+     */
+    private static final Map<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    /**
+     * Number of failures in a row that open the circuit
+     */
+    private final int failureThreshold;
+
+    /**
+     * Time the circuit stays open before a trial search is let through
+     */
+    private final Duration openDuration;
+
+    /**
+     * Current state
+     */
+    private State state = State.CLOSED;
+
+    /**
+     * Number of failures in a row
+     */
+    private int failures = 0;
+
+    /**
+     * When the circuit was opened, in System.nanoTime()
+     */
+    private long openedAt;
+
+    /**
+     * Generation of the circuit, changes every time it opens and every time a trial search starts. Permits carry the
+     * generation they were handed out in, so outcomes of searches started before that don't count anymore.
+     */
+    private long generation = 0;
+
+    /**
+     * Permit of the running trial search of the half open circuit, NO_PERMIT if there is none
+     */
+    private long trial = NO_PERMIT;
+
+    /**
+     * Default constructor, uses the default threshold and open duration
+     */
+    public CircuitBreaker()
+    {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION);
+    }
+
+    /**
+     * Constructor
+     * @param failureThreshold Number of failures in a row that open the circuit
+     * @param openDuration     Time the circuit stays open before a trial search is let through
+     */
+    public CircuitBreaker(int failureThreshold, Duration openDuration)
+    {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * Returns the breaker shared by all searchers of a provider, creates it with the defaults on first use
+     * @param provider Name of the provider, see ImageSearcherInterface.getProviderName()
+     * @return The breaker
+     */
+    public static CircuitBreaker forProvider(String provider)
+    {
+        return BREAKERS.computeIfAbsent(provider, name -> new CircuitBreaker());
+    }
+
+    /**
+     * Asks if a search may be performed. Every permitted search must be followed by one of recordSuccess(),
+     * recordFailure() or release() with the returned permit.
+     * @return Permit of the search, NO_PERMIT if the circuit is open
+     */
+    public synchronized long tryAcquire()
+    {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openDuration.toNanos()) {
+            state = State.HALF_OPEN;
+        }
+
+        if (state == State.CLOSED) {
+            return generation;
+        }
+
+        if (state == State.HALF_OPEN && trial == NO_PERMIT) {
+            trial = ++generation;
+            return trial;
+        }
+
+        return NO_PERMIT;
+    }
+
+    /**
+     * Records a successful search. The trial search closes the circuit, searches started before it opened don't
+     * change anything anymore.
+     * @param permit Permit of the search, see tryAcquire()
+     */
+    public synchronized void recordSuccess(long permit)
+    {
+        if (state == State.HALF_OPEN && permit == trial) {
+            state = State.CLOSED;
+            failures = 0;
+            trial = NO_PERMIT;
+        } else if (state == State.CLOSED && permit == generation) {
+            failures = 0;
+        }
+    }
+
+    /**
+     * Records a search that failed because of the provider, opens the circuit if there were too many of them or
+     * the trial search failed. Searches started before the circuit opened don't change anything anymore.
+     * @param permit Permit of the search, see tryAcquire()
+     */
+    public synchronized void recordFailure(long permit)
+    {
+        if (state == State.HALF_OPEN && permit == trial) {
+            open();
+            return;
+        }
+
+        if (state == State.CLOSED && permit == generation && ++failures >= failureThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * Records a search that tells nothing about the provider, i.e. one that was cancelled. Lets the next trial
+     * search through if it was the trial search.
+     * @param permit Permit of the search, see tryAcquire()
+     */
+    public synchronized void release(long permit)
+    {
+        if (permit == trial) {
+            trial = NO_PERMIT;
+        }
+    }
+
+    /**
+     * Opens the circuit, permits handed out so far don't count anymore
+     */
+    private void open()
+    {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        generation++;
+        trial = NO_PERMIT;
+    }
+
+    /**
+     * Returns the current state
+     * @return The state
+     */
+    public synchronized State getState()
+    {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openDuration.toNanos()) {
+            return State.HALF_OPEN;
+        }
+
+        return state;
+    }
+}
@@ -0,0 +1,415 @@
+package ImageSearchFX.ImageSearcher.Resilience;
+
+import ImageSearchFX.ImageSearcher.Decorator.AbstractImageSearcherDecorator;
+import ImageSearchFX.ImageSearcher.HTTP.HttpAPIErrorException;
+import ImageSearchFX.ImageSearcher.ImagePage;
+import ImageSearchFX.ImageSearcher.ImageSearcherInterface;
+import ImageSearchFX.ImageSearcher.RateLimit.RateLimitExceededException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Image searcher that makes the wrapped searcher survive a flaky provider:
+ *
+ *  - Searches that failed because the provider is overloaded (429), failing (5xx) or unreachable are retried a few
+ *    times, with exponential backoff and random jitter, so clients don't all retry at once. A Retry-After sent by
+ *    the provider is honoured.
+ *  - A CircuitBreaker shared by all searchers of the provider makes searches fail right away while it's down,
+ *    instead of every keystroke waiting for timeouts.
+ *  - Optionally, a fallback searcher, i.e. another provider, answers searches that failed anyway.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class ResilientImageSearcher extends AbstractImageSearcherDecorator
+{
+    /**
+     * Default number of retries after the first attempt
+     */
+    public static final int DEFAULT_MAX_RETRIES = 2;
+
+    /**
+     * Default backoff before the first retry, doubled for every further one
+     */
+    public static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofMillis(200);
+
+    /**
+     * Default maximum backoff between two attempts
+     */
+    public static final Duration DEFAULT_MAX_BACKOFF = Duration.ofSeconds(2);
+
+    /**
+     * Default maximum Retry-After to wait for, providers asking for more aren't retried
+     */
+    public static final Duration DEFAULT_MAX_RETRY_AFTER = Duration.ofSeconds(5);
+
+    /**
+     * Breaker of the wrapped searcher's provider
+     */
+    private final CircuitBreaker circuitBreaker;
+
+    /**
+     * Answers searches that failed anyway, null for none
+     */
+    private ImageSearcherInterface fallback;
+
+    /**
+     * Number of retries after the first attempt
+     */
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+
+    /**
+     * Backoff before the first retry
+     */
+    private Duration initialBackoff = DEFAULT_INITIAL_BACKOFF;
+
+    /**
+     * Maximum backoff between two attempts
+     */
+    private Duration maxBackoff = DEFAULT_MAX_BACKOFF;
+
+    /**
+     * Maximum Retry-After to wait for
+     */
+    private Duration maxRetryAfter = DEFAULT_MAX_RETRY_AFTER;
+
+    /**
+     * Constructor, uses the breaker shared by all searchers of the wrapped searcher's provider
+     * @param delegate The searcher to make resilient
+     */
+    public ResilientImageSearcher(ImageSearcherInterface delegate)
+    {
+        this(delegate, CircuitBreaker.forProvider(delegate.getProviderName()));
+    }
+
+    /**
+     * Constructor
+     * @param delegate       The searcher to make resilient
+     * @param circuitBreaker Breaker of the wrapped searcher's provider
+     */
+    public ResilientImageSearcher(ImageSearcherInterface delegate, CircuitBreaker circuitBreaker)
+    {
+        super(delegate);
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getUrlsBySearchTerm(String searchTerm, int limit) throws RuntimeException
+    {
+        return getUrlsBySearchTerm(searchTerm, limit, url -> {});
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getUrlsBySearchTerm(
+        String searchTerm,
+        int limit,
+        Consumer<String> urlConsumer
+    ) throws RuntimeException {
+        ImageSearcherInterface fallback = this.fallback;
+
+        return run(
+            consumer -> delegate.getUrlsBySearchTerm(searchTerm, limit, consumer),
+            fallback == null ? null : consumer -> fallback.getUrlsBySearchTerm(searchTerm, limit, consumer),
+            urlConsumer
+        );
+    }
+
+    @Override
+    public CompletableFuture<ImagePage> getPage(
+        String searchTerm,
+        int limit,
+        String cursor,
+        Consumer<String> urlConsumer
+    ) throws RuntimeException {
+        ImageSearcherInterface fallback = this.fallback;
+
+        // Cursors only make sense to the provider that created them, so only first pages can fall back
+        return run(
+            consumer -> delegate.getPage(searchTerm, limit, cursor, consumer),
+            fallback == null || cursor != null ? null : consumer -> fallback.getPage(searchTerm, limit, null, consumer),
+            urlConsumer
+        );
+    }
+
+    /**
+     * Performs a search with retries, circuit breaker and fallback
+     * @param call         Starts an attempt of the search with a URL consumer
+     * @param fallbackCall Starts the search of the fallback, null for none
+     * @param urlConsumer  Gets every URL as soon as it's found
+     * @return Future of the search
+     */
+    private <T> CompletableFuture<T> run(
+        Function<Consumer<String>, CompletableFuture<T>> call,
+        Function<Consumer<String>, CompletableFuture<T>> fallbackCall,
+        Consumer<String> urlConsumer
+    ) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<T>> current = new AtomicReference<>();
+
+        // A failed attempt may have handed out some URLs already, retries hand them out once
+        Set<String> handedOut = ConcurrentHashMap.newKeySet();
+        Consumer<String> consumer = url -> {
+            if (!future.isDone() && handedOut.add(url)) {
+                urlConsumer.accept(url);
+            }
+        };
+
+        attempt(0, call, fallbackCall, consumer, future, current);
+
+        // Cancelling reaches the running attempt, pending retries see the future is done and don't start
+        future.whenComplete((result, e) -> {
+            CompletableFuture<T> search = current.get();
+
+            if (future.isCancelled() && search != null) {
+                search.cancel(true);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Performs a single attempt and schedules the next one if it failed
+     * @param number       Number of the attempt, 0 for the first one
+     * @param call         Starts an attempt of the search with a URL consumer
+     * @param fallbackCall Starts the search of the fallback, null for none
+     * @param consumer     Gets every URL as soon as it's found
+     * @param future       Future of the whole search
+     * @param current      Holds the running attempt
+     */
+    private <T> void attempt(
+        int number,
+        Function<Consumer<String>, CompletableFuture<T>> call,
+        Function<Consumer<String>, CompletableFuture<T>> fallbackCall,
+        Consumer<String> consumer,
+        CompletableFuture<T> future,
+        AtomicReference<CompletableFuture<T>> current
+    ) {
+        if (future.isDone()) {
+            return;
+        }
+
+        long permit = circuitBreaker.tryAcquire();
+
+        if (permit == CircuitBreaker.NO_PERMIT) {
+            fail(
+                new HttpAPIErrorException("Provider " + getProviderName() + " is unavailable, not trying for now"),
+                fallbackCall,
+                consumer,
+                future,
+                current
+            );
+            return;
+        }
+
+        CompletableFuture<T> search = start(call, consumer);
+        current.set(search);
+
+        search.whenComplete((result, e) -> {
+            if (e == null) {
+                circuitBreaker.recordSuccess(permit);
+                future.complete(result);
+                return;
+            }
+
+            // Cancelled by the caller, tells nothing about the provider
+            if (future.isDone()) {
+                circuitBreaker.release(permit);
+                return;
+            }
+
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+
+            if (!isProviderFailure(cause)) {
+                circuitBreaker.release(permit);
+                fail(cause, fallbackCall, consumer, future, current);
+                return;
+            }
+
+            // Rejected by our own rate limiter, the provider never saw it. Worth a retry, but it's not down.
+            if (cause instanceof RateLimitExceededException) {
+                circuitBreaker.release(permit);
+            } else {
+                circuitBreaker.recordFailure(permit);
+            }
+
+            long backoff = number < maxRetries ? backoffMillis(number, cause) : -1;
+
+            if (backoff < 0) {
+                fail(cause, fallbackCall, consumer, future, current);
+                return;
+            }
+
+            CompletableFuture.delayedExecutor(backoff, TimeUnit.MILLISECONDS).execute(
+                () -> attempt(number + 1, call, fallbackCall, consumer, future, current)
+            );
+        });
+
+        // Cancelled while the attempt was started
+        if (future.isCancelled()) {
+            search.cancel(true);
+        }
+    }
+
+    /**
+     * Fails the search, or hands it over to the fallback if there is one
+     * @param cause        Why the search failed
+     * @param fallbackCall Starts the search of the fallback, null for none
+     * @param consumer     Gets every URL as soon as it's found
+     * @param future       Future of the whole search
+     * @param current      Holds the running attempt
+     */
+    private <T> void fail(
+        Throwable cause,
+        Function<Consumer<String>, CompletableFuture<T>> fallbackCall,
+        Consumer<String> consumer,
+        CompletableFuture<T> future,
+        AtomicReference<CompletableFuture<T>> current
+    ) {
+        if (fallbackCall == null) {
+            future.completeExceptionally(cause);
+            return;
+        }
+
+        CompletableFuture<T> search = start(fallbackCall, consumer);
+        current.set(search);
+
+        search.whenComplete((result, e) -> {
+            if (e == null) {
+                future.complete(result);
+            } else {
+                future.completeExceptionally(cause); // The original failure is the interesting one
+            }
+        });
+
+        if (future.isCancelled()) {
+            search.cancel(true);
+        }
+    }
+
+    /**
+     * Starts a search, exceptions thrown right away fail the returned future
+     * @param call     Starts the search with a URL consumer
+     * @param consumer Gets every URL as soon as it's found
+     * @return Future of the search
+     */
+    private static <T> CompletableFuture<T> start(
+        Function<Consumer<String>, CompletableFuture<T>> call,
+        Consumer<String> consumer
+    ) {
+        try {
+            return call.apply(consumer);
+        } catch (RuntimeException e) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    /**
+     * Determines if a failure was caused by the provider being overloaded, failing or unreachable
+     * @param cause The failure
+     * @return True if it was, those are worth a retry and, unless rejected by our own rate limiter, count for the
+     *         circuit breaker
+     */
+    private static boolean isProviderFailure(Throwable cause)
+    {
+        if (cause instanceof HttpAPIErrorException) {
+            return ((HttpAPIErrorException) cause).isRetryable();
+        }
+
+        return cause instanceof IOException || cause instanceof TimeoutException;
+    }
+
+    /**
+     * Determines how long to wait before the next attempt: Exponential backoff with full jitter, at least as long
+     * as the provider asked for
+     * @param attempt Number of the failed attempt, 0 for the first one
+     * @param cause   Why it failed
+     * @return Time to wait in milliseconds, -1 if the provider asked to wait longer than maxRetryAfter
+     */
+    private long backoffMillis(int attempt, Throwable cause)
+    {
+        long exponential = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(attempt, 20));
+        long backoff = ThreadLocalRandom.current().nextLong(exponential + 1);
+
+        Duration retryAfter = cause instanceof HttpAPIErrorException
+            ? ((HttpAPIErrorException) cause).getRetryAfter()
+            : null;
+
+        if (retryAfter == null) {
+            return backoff;
+        }
+
+        if (retryAfter.compareTo(maxRetryAfter) > 0) {
+            return -1;
+        }
+
+        return Math.max(backoff, retryAfter.toMillis());
+    }
+
+    /**
+     * Returns the breaker of the wrapped searcher's provider
+     * @return The breaker
+     */
+    public CircuitBreaker getCircuitBreaker()
+    {
+        return circuitBreaker;
+    }
+
+    /**
+     * Sets a searcher that answers searches that failed anyway, i.e. another provider
+     * @param fallback The fallback, null for none
+     */
+    public void setFallback(ImageSearcherInterface fallback)
+    {
+        this.fallback = fallback;
+    }
+
+    /**
+     * Sets the number of retries after the first attempt
+     * @param maxRetries Number of retries, 0 disables retrying
+     */
+    public void setMaxRetries(int maxRetries)
+    {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Sets the backoff before the first retry, it's doubled for every further one
+     * @param initialBackoff The backoff
+     */
+    public void setInitialBackoff(Duration initialBackoff)
+    {
+        this.initialBackoff = initialBackoff;
+    }
+
+    /**
+     * Sets the maximum backoff between two attempts
+     * @param maxBackoff The backoff
+     */
+    public void setMaxBackoff(Duration maxBackoff)
+    {
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * Sets the maximum Retry-After to wait for, providers asking for more aren't retried
+     * @param maxRetryAfter The maximum
+     */
+    public void setMaxRetryAfter(Duration maxRetryAfter)
+    {
+        this.maxRetryAfter = maxRetryAfter;
+    }
+}
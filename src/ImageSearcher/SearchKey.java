@@ -0,0 +1,105 @@
+package ImageSearchFX.ImageSearcher;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Identifies a search by provider and normalized search term, used to share results between searches that would
+ * end up at the same API call anyway, i.e. "Empire State" and " empire  state ".
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public final class SearchKey
+{
+    /**
+     * Name of the provider that answers the search
+     */
+    private final String provider;
+
+    /**
+     * Normalized search term
+     */
+    private final String term;
+
+    /**
+     * Constructor
+     * @param provider Name of the provider that answers the search
+     * @param term     Already normalized search term
+     */
+    private SearchKey(String provider, String term)
+    {
+        this.provider = provider;
+        this.term = term;
+    }
+
+    /**
+     * Builds a key for a given provider and a raw search term
+     * @param provider   Name of the provider, see ImageSearcherInterface.getProviderName()
+     * @param searchTerm The term as typed by the user
+     * @return The key
+     */
+    public static SearchKey of(String provider, String searchTerm)
+    {
+        return new SearchKey(provider, normalize(searchTerm));
+    }
+
+    /**
+     * Normalizes a search term: Trims it, collapses whitespace and lower cases it
+     * @param searchTerm The term as typed by the user
+     * @return The normalized term
+     */
+    public static String normalize(String searchTerm)
+    {
+        if (searchTerm == null) {
+            return "";
+        }
+
+        return searchTerm.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the provider name
+     * @return Provider name
+     */
+    public String getProvider()
+    {
+        return provider;
+    }
+
+    /**
+     * Returns the normalized search term
+     * @return Normalized search term
+     */
+    public String getTerm()
+    {
+        return term;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof SearchKey)) {
+            return false;
+        }
+
+        SearchKey other = (SearchKey) o;
+
+        return provider.equals(other.provider) && term.equals(other.term);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(provider, term);
+    }
+
+    @Override
+    public String toString()
+    {
+        return provider + ":" + term;
+    }
+}
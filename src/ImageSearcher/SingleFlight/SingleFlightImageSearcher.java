@@ -0,0 +1,366 @@
+package ImageSearchFX.ImageSearcher.SingleFlight;
+
+import ImageSearchFX.ImageSearcher.Decorator.AbstractImageSearcherDecorator;
+import ImageSearchFX.ImageSearcher.ImageSearcherInterface;
+import ImageSearchFX.ImageSearcher.SearchKey;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Image searcher that shares a single request among all callers searching for the same term at the same time,
+ * i.e. several ImageSearchControls bound to related fields. A running search with a higher limit also answers
+ * searches with a lower limit.
+ *
+ * Every caller gets a future of its own. Cancelling it only detaches that caller, the shared request is only
+ * cancelled once nobody is waiting for it anymore. URLs found before a caller joined are handed out to it right away.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class SingleFlightImageSearcher extends AbstractImageSearcherDecorator
+{
+    /**
+     * Currently running searches by key
+     */
+    private final Map<SearchKey, Flight> flights = new HashMap<>();
+
+    /**
+     * Constructor
+     * @param delegate The searcher that performs the actual requests
+     */
+    public SingleFlightImageSearcher(ImageSearcherInterface delegate)
+    {
+        super(delegate);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getUrlsBySearchTerm(String searchTerm, int limit) throws RuntimeException
+    {
+        return getUrlsBySearchTerm(searchTerm, limit, url -> {});
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getUrlsBySearchTerm(
+        String searchTerm,
+        int limit,
+        Consumer<String> urlConsumer
+    ) throws RuntimeException {
+        SearchKey key = SearchKey.of(getProviderName(), searchTerm);
+        Subscriber subscriber = new Subscriber(urlConsumer, limit);
+        Flight flight;
+        boolean start = false;
+
+        synchronized (flights) {
+            flight = flights.get(key);
+
+            if (flight == null || flight.limit < limit || !flight.attach(subscriber)) {
+                flight = new Flight(limit);
+                flights.put(key, flight);
+                flight.attach(subscriber);
+                start = true;
+
+                final Flight started = flight;
+                flight.shared.whenComplete((urls, e) -> {
+                    synchronized (flights) {
+                        flights.remove(key, started);
+                    }
+                });
+            }
+        }
+
+        // URLs found before joining are handed out outside of the lock, callers' consumers may take a while
+        subscriber.drain();
+
+        // Started outside of the lock, the delegate may take a while or even fail right away. Callers joining in the
+        // meantime wait for the shared future, which exists from the start.
+        if (start) {
+            Flight started = flight;
+            started.start(() -> delegate.getUrlsBySearchTerm(searchTerm, limit, started::publish));
+        }
+
+        return subscribe(key, flight, subscriber);
+    }
+
+    /**
+     * Creates a future for a single caller of a shared search
+     * @param key        Key of the search
+     * @param flight     The shared search
+     * @param subscriber The caller
+     * @return Future that only belongs to the caller
+     */
+    private CompletableFuture<List<String>> subscribe(SearchKey key, Flight flight, Subscriber subscriber)
+    {
+        CompletableFuture<List<String>> caller = new CompletableFuture<>();
+        int limit = subscriber.limit;
+
+        flight.shared.whenComplete((urls, e) -> {
+            if (e != null) {
+                caller.completeExceptionally(e);
+            } else {
+                caller.complete(urls.size() > limit ? new ArrayList<>(urls.subList(0, limit)) : urls);
+            }
+        });
+
+        // Detach on cancellation, cancel the shared request if this was the last one waiting for it
+        caller.whenComplete((urls, e) -> {
+            if (!caller.isCancelled()) {
+                return;
+            }
+
+            boolean abandoned;
+            synchronized (flights) {
+                abandoned = flight.detach(subscriber);
+
+                if (abandoned) {
+                    flights.remove(key, flight);
+                }
+            }
+
+            if (abandoned) {
+                flight.shared.cancel(true);
+            }
+        });
+
+        return caller;
+    }
+
+    /**
+     * Number of searches currently running, mostly for debugging
+     * @return Number of running searches
+     */
+    public int getRunningSearches()
+    {
+        synchronized (flights) {
+            return flights.size();
+        }
+    }
+
+    /**
+     * A single caller of a shared search. URLs are queued in the order the flight found them and handed out by one
+     * thread at a time, so a URL published while earlier ones are still being replayed can't overtake them.
+     */
+    private static class Subscriber
+    {
+        /**
+         * Gets the URLs found for this caller
+         */
+        private final Consumer<String> urlConsumer;
+
+        /**
+         * Maximum number of URLs the caller asked for
+         */
+        private final int limit;
+
+        /**
+         * URLs queued but not handed out yet
+         */
+        private final Deque<String> pending = new ArrayDeque<>();
+
+        /**
+         * Number of URLs queued so far
+         */
+        private int queued = 0;
+
+        /**
+         * Flag if a thread is currently handing out URLs
+         */
+        private boolean draining = false;
+
+        /**
+         * Constructor
+         * @param urlConsumer Gets the URLs found for this caller
+         * @param limit       Maximum number of URLs the caller asked for
+         */
+        Subscriber(Consumer<String> urlConsumer, int limit)
+        {
+            this.urlConsumer = urlConsumer;
+            this.limit = limit;
+        }
+
+        /**
+         * Queues a URL, unless the caller already has enough. Called while holding the flight's lock, which keeps
+         * the order the same for all callers.
+         * @param url The URL
+         */
+        synchronized void enqueue(String url)
+        {
+            if (queued < limit) {
+                queued++;
+                pending.add(url);
+            }
+        }
+
+        /**
+         * Hands out the queued URLs, must not be called while holding a lock. Returns right away if another thread
+         * is already at it, that one hands out the newly queued URLs as well.
+         */
+        void drain()
+        {
+            synchronized (this) {
+                if (draining) {
+                    return;
+                }
+
+                draining = true;
+            }
+
+            try {
+                String url;
+
+                while ((url = next()) != null) {
+                    urlConsumer.accept(url);
+                }
+            } catch (RuntimeException e) {
+                // A failing consumer must not block the URLs after it forever
+                synchronized (this) {
+                    draining = false;
+                }
+
+                throw e;
+            }
+        }
+
+        /**
+         * Takes the next queued URL, stops draining if there is none
+         * @return The URL, null if the queue is empty
+         */
+        private synchronized String next()
+        {
+            String url = pending.poll();
+
+            if (url == null) {
+                draining = false;
+            }
+
+            return url;
+        }
+    }
+
+    /**
+     * A single shared search. Attaching and detaching is guarded by the flights map, found URLs and callers by the
+     * flight.
+     */
+    private static class Flight
+    {
+        /**
+         * Limit the shared search was started with
+         */
+        private final int limit;
+
+        /**
+         * Result of the shared request, completed once it is done. Cancelling it cancels the request.
+         */
+        private final CompletableFuture<List<String>> shared = new CompletableFuture<>();
+
+        /**
+         * Callers still waiting for the result
+         */
+        private final List<Subscriber> subscribers = new ArrayList<>();
+
+        /**
+         * URLs found so far, handed out to callers joining late
+         */
+        private final List<String> found = new ArrayList<>();
+
+        /**
+         * Flag if all callers detached, a flight can't be joined again after that
+         */
+        private boolean abandoned = false;
+
+        /**
+         * Constructor
+         * @param limit Limit the shared search is started with
+         */
+        Flight(int limit)
+        {
+            this.limit = limit;
+        }
+
+        /**
+         * Starts the shared request. A request that fails right away fails the shared future instead of leaving it
+         * pending forever, which also removes the flight again.
+         * @param request Starts the request
+         */
+        void start(Supplier<CompletableFuture<List<String>>> request)
+        {
+            CompletableFuture<List<String>> running;
+
+            try {
+                running = request.get();
+            } catch (RuntimeException e) {
+                shared.completeExceptionally(e);
+                return;
+            }
+
+            running.whenComplete((urls, e) -> {
+                if (e != null) {
+                    shared.completeExceptionally(e);
+                } else {
+                    shared.complete(urls);
+                }
+            });
+
+            // Runs right away if every caller already detached while the request was being started
+            shared.whenComplete((urls, e) -> {
+                if (shared.isCancelled()) {
+                    running.cancel(true);
+                }
+            });
+        }
+
+        /**
+         * Adds a caller and queues the URLs found so far for it, see Subscriber.drain()
+         * @param subscriber The caller
+         * @return False if the flight was already abandoned and cannot be joined anymore
+         */
+        synchronized boolean attach(Subscriber subscriber)
+        {
+            if (abandoned) {
+                return false;
+            }
+
+            subscribers.add(subscriber);
+            found.forEach(subscriber::enqueue);
+
+            return true;
+        }
+
+        /**
+         * Removes a caller
+         * @param subscriber The caller
+         * @return True if this was the last caller
+         */
+        boolean detach(Subscriber subscriber)
+        {
+            synchronized (this) {
+                subscribers.remove(subscriber);
+                abandoned = subscribers.isEmpty();
+            }
+
+            return abandoned;
+        }
+
+        /**
+         * Hands out a URL found by the shared request to all callers
+         * @param url The URL
+         */
+        void publish(String url)
+        {
+            List<Subscriber> current;
+            synchronized (this) {
+                found.add(url);
+                subscribers.forEach(subscriber -> subscriber.enqueue(url));
+                current = new ArrayList<>(subscribers);
+            }
+
+            current.forEach(Subscriber::drain);
+        }
+    }
+}
@@ -4,11 +4,10 @@ import ImageSearchFX.ImageSearcher.ImageSearcherInterface;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.function.Function;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Dummy image searcher, returns a static list of images of the empire state building, ignoring the limit.
@@ -24,6 +23,7 @@ public class StaticImageSearcher implements ImageSearcherInterface
 
     /**
      * Default constructor
+     * @param executor Executor to build the list on
      */
     public StaticImageSearcher(ExecutorService executor)
     {
@@ -35,35 +35,47 @@ public class StaticImageSearcher implements ImageSearcherInterface
     {
         CompletableFuture<List<String>> future = new CompletableFuture<>();
 
-        future.thenApplyAsync((Function<List<String>, Object>) strings -> {
-            List<String> imageUrls = new ArrayList<>();
+        // A FutureTask instead of supplyAsync(), it cancels the future if the executor drops the queued search
+        FutureTask<Void> task = new FutureTask<Void>(() -> future.complete(buildList()), null) {
+            @Override
+            protected void done()
+            {
+                if (isCancelled()) {
+                    future.cancel(false);
+                }
+            }
+        };
 
-            imageUrls.add("https://upload.wikimedia.org/wikipedia/en/b/bb/Empire_State_Building_from_5th_Avenue.jpg");
-            imageUrls.add("https://upload.wikimedia.org/wikipedia/en/6/6d/Empire_State_Building_timsdad.jpg");
-            imageUrls.add("https://upload.wikimedia.org/wikipedia/en/e/ec/Empire_State_Building_top.jpg");
-            imageUrls.add("https://upload.wikimedia.org/wikipedia/en/a/ab/Empire_State_College_logo.png");
-            imageUrls.add("https://upload.wikimedia.org/wikipedia/en/b/b6/Empire_State_Development_Corporation_%28logo%29.jpg");
-            imageUrls.add("https://upload.wikimedia.org/wikipedia/en/4/49/Empire_State_Games_Collage.jpg");
-            imageUrls.add("https://upload.wikimedia.org/wikipedia/en/5/54/Empire_State_Games_Logo.jpg");
-            imageUrls.add("https://upload.wikimedia.org/wikipedia/en/9/9d/Empire_State_Human.ogg");
-            imageUrls.add("https://upload.wikimedia.org/wikipedia/en/3/32/Empire_State_Pride_Agenda_logo.png");
-            imageUrls.add("https://upload.wikimedia.org/wikipedia/en/5/5f/Empire_State_Railway_Museum_logo.png");
-            imageUrls.add("https://upload.wikimedia.org/wikipedia/en/5/5f/Empire_State_Railway_Museum_logo.png");
-            imageUrls.add("https://upload.wikimedia.org/wikipedia/en/5/5f/Empire_State_Railway_Museum_logo.png");
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
 
-            return imageUrls;
-        });
+        return future;
+    }
 
-        executor.execute(() -> {
-            try {
-                future.get();
-            } catch (CancellationException e) {
-                // Do nothing, as the execution of the future was cancelled
-            } catch (Exception e) {
-                throw new RuntimeException("Exception thrown while getting images: " + e.getMessage());
-            }
-        });
+    /**
+     * Builds the static list of images
+     * @return The image URLs
+     */
+    private static List<String> buildList()
+    {
+        List<String> imageUrls = new ArrayList<>();
 
-        return future;
+        imageUrls.add("https://upload.wikimedia.org/wikipedia/en/b/bb/Empire_State_Building_from_5th_Avenue.jpg");
+        imageUrls.add("https://upload.wikimedia.org/wikipedia/en/6/6d/Empire_State_Building_timsdad.jpg");
+        imageUrls.add("https://upload.wikimedia.org/wikipedia/en/e/ec/Empire_State_Building_top.jpg");
+        imageUrls.add("https://upload.wikimedia.org/wikipedia/en/a/ab/Empire_State_College_logo.png");
+        imageUrls.add("https://upload.wikimedia.org/wikipedia/en/b/b6/Empire_State_Development_Corporation_%28logo%29.jpg");
+        imageUrls.add("https://upload.wikimedia.org/wikipedia/en/4/49/Empire_State_Games_Collage.jpg");
+        imageUrls.add("https://upload.wikimedia.org/wikipedia/en/5/54/Empire_State_Games_Logo.jpg");
+        imageUrls.add("https://upload.wikimedia.org/wikipedia/en/9/9d/Empire_State_Human.ogg");
+        imageUrls.add("https://upload.wikimedia.org/wikipedia/en/3/32/Empire_State_Pride_Agenda_logo.png");
+        imageUrls.add("https://upload.wikimedia.org/wikipedia/en/5/5f/Empire_State_Railway_Museum_logo.png");
+        imageUrls.add("https://upload.wikimedia.org/wikipedia/en/5/5f/Empire_State_Railway_Museum_logo.png");
+        imageUrls.add("https://upload.wikimedia.org/wikipedia/en/5/5f/Empire_State_Railway_Museum_logo.png");
+
+        return imageUrls;
     }
 }
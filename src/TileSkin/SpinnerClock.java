@@ -0,0 +1,99 @@
+package ImageSearchFX.TileSkin;
+
+import javafx.animation.AnimationTimer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Single animation driving all loading spinners. Only runs while at least one spinner is registered, so idle
+ * controls don't cost a single pulse. Only to be used on the JavaFX application thread.
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public final class SpinnerClock
+{
+    /**
+     * Duration of a full rotation in milliseconds
+     */
+    public static final double ROTATION_MILLIS = 800;
+
+    /**
+     * Shared instance
+     */
+    private static SpinnerClock instance;
+
+    /**
+     * Registered spinners, get the current angle in degrees on every pulse
+     */
+    private final Set<DoubleConsumer> spinners = new LinkedHashSet<>();
+
+    /**
+     * Timer running on the pulse while spinners are registered
+     */
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now)
+        {
+            double angle = (now / 1_000_000.0 % ROTATION_MILLIS) / ROTATION_MILLIS * 360;
+
+            // Copy, spinners may unregister while being updated
+            List<DoubleConsumer> current = new ArrayList<>(spinners);
+            for (DoubleConsumer spinner : current) {
+                spinner.accept(angle);
+            }
+        }
+    };
+
+    /**
+     * Running flag of the timer
+     */
+    private boolean running = false;
+
+    /**
+     * Singleton, use getInstance()
+     */
+    private SpinnerClock()
+    {
+    }
+
+    /**
+     * Returns the shared instance
+     * @return The clock
+     */
+    public static SpinnerClock getInstance()
+    {
+        if (instance == null) {
+            instance = new SpinnerClock();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Starts updating a spinner, starts the clock if it's the first one
+     * @param spinner Gets the current angle in degrees on every pulse
+     */
+    public void register(DoubleConsumer spinner)
+    {
+        if (spinners.add(spinner) && !running) {
+            running = true;
+            timer.start();
+        }
+    }
+
+    /**
+     * Stops updating a spinner, stops the clock if it was the last one
+     * @param spinner The spinner
+     */
+    public void unregister(DoubleConsumer spinner)
+    {
+        if (spinners.remove(spinner) && spinners.isEmpty() && running) {
+            running = false;
+            timer.stop();
+        }
+    }
+}
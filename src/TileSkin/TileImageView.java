@@ -1,11 +1,13 @@
 package ImageSearchFX.TileSkin;
 
 import javafx.animation.*;
+import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.scene.effect.BlurType;
 import javafx.scene.effect.DropShadow;
 import javafx.scene.image.Image;
@@ -14,6 +16,9 @@ import javafx.scene.paint.Color;
 import javafx.scene.transform.Rotate;
 import javafx.util.Duration;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.DoubleConsumer;
+
 /**
  * Extended ImageView to give some convenience methods and keep things where they belong.
  *
@@ -31,6 +36,11 @@ public class TileImageView extends ImageView
      */
     private String currentlyLoadedUrl = null;
 
+    /**
+     * URL that should be shown next, used to ignore images that arrive after another one was requested
+     */
+    private String requestedUrl = null;
+
     /**
      * Placeholder for current image that is being loaded
      */
@@ -52,9 +62,9 @@ public class TileImageView extends ImageView
     private Rotate rotatingTransform;
 
     /**
-     * Animation for rotation
+     * Rotates the spinner, registered with the SpinnerClock while loading
      */
-    private Timeline rotationAnimation;
+    private DoubleConsumer spinnerUpdater;
 
     /**
      * Animation for hover shadow
@@ -81,6 +91,12 @@ public class TileImageView extends ImageView
      */
     private DoubleProperty imageWidthHeight = new SimpleDoubleProperty();
 
+    /**
+     * Aspect ratio of the image about to be shown as height per width, 0 if unknown. Known ratios shrink the fit
+     * box of landscape images up front, so the row doesn't change height once the image arrives.
+     */
+    private double aspectRatio = 0;
+
     /**
      * Default constructor
      */
@@ -121,20 +137,9 @@ public class TileImageView extends ImageView
      */
     private void setupTransitions()
     {
+        // Rotation is driven by the shared SpinnerClock, and only while loading, see startLoadingState()
         rotatingTransform = new Rotate(0, 0, 0);
-        rotationAnimation = new Timeline();
-        rotationAnimation.getKeyFrames().add(
-            new KeyFrame(
-                Duration.millis(800),
-                new KeyValue(
-                    rotatingTransform.angleProperty(),
-                    360
-                )
-            )
-        );
-
-        rotationAnimation.setCycleCount(Animation.INDEFINITE);
-        rotationAnimation.play(); // Already start rotating, shouldn't impact performance since there's no repaint
+        spinnerUpdater = rotatingTransform::setAngle;
 
         dropshadowInAnimation = new Timeline();
         dropshadowInAnimation.getKeyFrames().add(
@@ -167,16 +172,24 @@ public class TileImageView extends ImageView
     private void addValueChangeListeners()
     {
         // Resize the image
-        imageWidthHeight.addListener((observable, oldValue, newValue) -> {
-            // Adjust image size
-            double newWidthHeight = newValue.doubleValue();
+        imageWidthHeight.addListener((observable, oldValue, newValue) -> updateFitSize());
+    }
+
+    /**
+     * Adjusts the fit box to the tile size and the aspect ratio of the image
+     */
+    private void updateFitSize()
+    {
+        double width = imageWidthHeight.get();
+        double height = aspectRatio > 0 ? width * Math.min(1, aspectRatio) : width;
 
-            setFitWidth(newWidthHeight);
-            setFitHeight(newWidthHeight);
+        setFitWidth(width);
+        setFitHeight(height);
 
-            rotatingTransform.setPivotX(newWidthHeight / 2);
-            rotatingTransform.setPivotY(newWidthHeight / 2);
-        });
+        // The square spinner fits the smaller side of the box
+        double spinnerSize = Math.min(width, height);
+        rotatingTransform.setPivotX(spinnerSize / 2);
+        rotatingTransform.setPivotY(spinnerSize / 2);
     }
 
     /**
@@ -216,14 +229,88 @@ public class TileImageView extends ImageView
         });
     }
 
+    /**
+     * Load an image that isn't available yet, i.e. because it's still being read from disk
+     * @param url   The URL that is being loaded
+     * @param image Future of the Image, may complete on any thread
+     */
+    public void loadImage(String url, CompletableFuture<Image> image)
+    {
+        // Already showing it, i.e. a recycled tile that is shown for the same image again
+        if (!isLoading() && url.equals(currentlyLoadedUrl)) {
+            requestedUrl = url;
+            return;
+        }
+
+        requestedUrl = url;
+
+        if (!isLoading()) {
+            startLoadingState();
+        }
+
+        image.whenComplete((loaded, e) -> {
+            // Cancelled loads were replaced by another one, that one ends the loading state
+            if (image.isCancelled()) {
+                return;
+            }
+
+            Runnable show = () -> {
+                // Another image was requested in the meantime
+                if (!url.equals(requestedUrl)) {
+                    return;
+                }
+
+                if (e == null) {
+                    loadImage(url, loaded);
+                    return;
+                }
+
+                // Couldn't be downloaded, don't spin forever
+                endLoadingState();
+                setImage(null);
+                currentlyLoadedUrl = null;
+            };
+
+            if (Platform.isFxApplicationThread()) {
+                show.run();
+            } else {
+                Platform.runLater(show);
+            }
+        });
+    }
+
     /**
      * Load an image
      * @param url   The URL that is being loaded
-     * @param image The Image that is being loaded
+     * @param image The Image that is being loaded, may be shared with other views via ImageCache
      */
     public void loadImage(String url, Image image)
     {
-        System.out.println(image.progressProperty().getValue());
+        requestedUrl = url;
+
+        // If there's an image already being loaded, stop waiting for it. It's not cancelled, since other views may
+        // wait for the same image.
+        if (currentlyLoadingImage != null && currentOnloadListener != null) {
+            currentlyLoadingImage.progressProperty().removeListener(currentOnloadListener);
+        }
+
+        currentOnloadListener = null;
+
+        // Already loaded, i.e. taken from the cache
+        if (image.getProgress() >= 1.0 && !image.isError()) {
+            endLoadingState();
+            currentlyLoadingImage = null;
+            setImage(image);
+            currentlyLoadedUrl = url;
+            return;
+        }
+
+        // In rare cases the new image load is triggered the exact moment the other image finished loading and
+        // displays. This leads to just replacing of an image without showing the loading spinner first.
+        if (!isLoading()) {
+            startLoadingState();
+        }
+
         ChangeListener<Number> onLoadListener = (observable, oldValue, newValue) -> {
             if (newValue.equals(1.0) && null != currentlyLoadingImage && currentlyLoadingImage.equals(image)) {
                 endLoadingState();
@@ -232,18 +319,6 @@ public class TileImageView extends ImageView
             }
         };
 
-        // If there's an image already being loaded, cancel the load and trigger this one to load instead
-        if (isLoading() && currentlyLoadingImage != null) {
-            currentlyLoadingImage.cancel();
-            currentlyLoadingImage.progressProperty().removeListener(currentOnloadListener);
-
-            // In rare cases the new image load is triggered the exact moment the other image finished loading and
-            // displays. This leads to just replacing of an image without showing the loading spinner first.
-            if (currentlyLoadingImage.progressProperty().getValue().equals(1.0) && !isLoading()) {
-                startLoadingState();
-            }
-        }
-
         currentlyLoadingImage = image;
 
         // On load
@@ -251,6 +326,66 @@ public class TileImageView extends ImageView
         currentOnloadListener = onLoadListener;
     }
 
+    /**
+     * Swaps the shown image for a sharper one once that is completely loaded, without showing the loading spinner
+     * in between. Tiles that are still loading simply load the new image instead.
+     * @param url   The URL that is being loaded, may be another variant of the shown image
+     * @param image Future of the Image, may complete on any thread
+     */
+    public void upgradeImage(String url, CompletableFuture<Image> image)
+    {
+        if (isLoading() || currentlyLoadedUrl == null) {
+            loadImage(url, image);
+            return;
+        }
+
+        requestedUrl = url;
+
+        image.thenAccept(loaded -> {
+            Runnable show = () -> {
+                // Another image was requested in the meantime
+                if (!url.equals(requestedUrl)) {
+                    return;
+                }
+
+                if (loaded.getProgress() >= 1.0) {
+                    showUpgrade(url, loaded);
+                    return;
+                }
+
+                loaded.progressProperty().addListener(new ChangeListener<Number>() {
+                    @Override
+                    public void changed(ObservableValue<? extends Number> observable, Number oldValue, Number progress)
+                    {
+                        if (progress.doubleValue() >= 1.0) {
+                            observable.removeListener(this);
+                            showUpgrade(url, loaded);
+                        }
+                    }
+                });
+            };
+
+            if (Platform.isFxApplicationThread()) {
+                show.run();
+            } else {
+                Platform.runLater(show);
+            }
+        });
+    }
+
+    /**
+     * Shows an upgraded image, unless it failed or another image was requested in the meantime
+     * @param url   The URL of the image
+     * @param image The loaded image
+     */
+    private void showUpgrade(String url, Image image)
+    {
+        if (url.equals(requestedUrl) && !image.isError() && !isLoading()) {
+            setImage(image);
+            currentlyLoadedUrl = url;
+        }
+    }
+
     /**
      * Replaces the image with a loading spinner
      */
@@ -262,6 +397,7 @@ public class TileImageView extends ImageView
 
         setImage(loadingSpinner);
         getTransforms().add(rotatingTransform);
+        SpinnerClock.getInstance().register(spinnerUpdater);
         getStyleClass().add("is-loading");
 
         isLoading.setValue(true);
@@ -277,6 +413,7 @@ public class TileImageView extends ImageView
             return;
         }
 
+        SpinnerClock.getInstance().unregister(spinnerUpdater);
         getTransforms().remove(rotatingTransform);
         getStyleClass().remove("is-loading");
         isLoading.setValue(false);
@@ -288,6 +425,7 @@ public class TileImageView extends ImageView
      */
     void emptyView()
     {
+        requestedUrl = null;
         setImage(null);
     }
 
@@ -318,6 +456,18 @@ public class TileImageView extends ImageView
         return currentlyLoadedUrl;
     }
 
+    /**
+     * Sets the aspect ratio of the image about to be shown, to reserve its space while it's loading
+     * @param aspectRatio Height per width, 0 if unknown, which reserves a square
+     */
+    void setAspectRatio(double aspectRatio)
+    {
+        if (this.aspectRatio != aspectRatio) {
+            this.aspectRatio = aspectRatio;
+            updateFitSize();
+        }
+    }
+
     /**
      * Manually set the width/height
      * @param imageWidthHeight Width/height
@@ -1,10 +1,15 @@
 package ImageSearchFX.TileSkin;
 
+import ImageSearchFX.ImageLoader.ImageLoadRequest;
+import ImageSearchFX.ImageLoader.ImageLoadScheduler;
+import ImageSearchFX.ImageLoader.OutputScaleWatcher;
+import ImageSearchFX.ImageLoader.SizeBuckets;
 import ImageSearchFX.ImageSearchControl;
+import ImageSearchFX.ImageSearcher.ImageResult;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleDoubleProperty;
-import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.geometry.Bounds;
 import javafx.scene.Group;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.SkinBase;
@@ -13,7 +18,10 @@ import javafx.scene.image.Image;
 import javafx.scene.layout.*;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
 /**
@@ -24,10 +32,15 @@ import java.util.function.Consumer;
 public class TileSkin extends SkinBase<ImageSearchControl>
 {
     /**
-     * Fix list of maximum image nodes
+     * List of image nodes, grows beyond the limit when further pages are loaded with infinite scrolling
      */
     private List<TileImageView> images = new ArrayList<>();
 
+    /**
+     * Number of image nodes always kept, the limit
+     */
+    private int minimumTiles;
+
     /**
      * Pane to actually draw in
      */
@@ -43,6 +56,31 @@ public class TileSkin extends SkinBase<ImageSearchControl>
      */
     private int maxPerRow;
 
+    /**
+     * Image loads that may still be waiting in the scheduler, by tile
+     */
+    private Map<TileImageView, ImageLoadRequest> loadRequests = new HashMap<>();
+
+    /**
+     * Size bucket the images of the current list are requested in, only grows until the next list, see SizeBuckets
+     */
+    private int imageBucket = 0;
+
+    /**
+     * Requests sharper images when the control is moved to a screen with a higher output scale
+     */
+    private OutputScaleWatcher outputScaleWatcher;
+
+    /**
+     * Constructor used by CSS, takes limit and number of images per row from the control
+     *
+     * @param control The control for which this Skin should attach to.
+     */
+    public TileSkin(ImageSearchControl control)
+    {
+        this(control, control.getLimit(), control.getMaxPerRow());
+    }
+
     /**
      * Constructor for all SkinBase instances.
      *
@@ -97,30 +135,61 @@ public class TileSkin extends SkinBase<ImageSearchControl>
             );
         }
 
-        //
-        for (int i = 0; i < numberOfImages; i++) {
-            TileImageView imageView = new TileImageView();
+        minimumTiles = numberOfImages;
 
-            // Resize behaviour: Change with and height when resizing horizontally
-            getSkinnable().widthProperty().addListener((observable, oldValue, newValue) -> {
-                int newWidth = (int) Math.floor(newValue.doubleValue() / maxPerRow);
+        for (int i = 0; i < numberOfImages; i++) {
+            images.add(createTile());
+        }
+    }
 
-                imageView.setImageWidthHeight(newWidth);
-            });
+    /**
+     * Creates a single tile
+     * @return The tile
+     */
+    private TileImageView createTile()
+    {
+        TileImageView imageView = new TileImageView();
+        imageView.setImageWidthHeight((int) Math.floor(getSkinnable().getWidth() / maxPerRow));
+        imageView.setPreserveRatio(true);
+
+        // Set new image URL on property when clicking
+        imageView.isLoadingProperty().addListener(((observable1, oldValue, newValue) -> {
+            if (!newValue) { // Finished loading
+                imageView.setOnMouseClicked(e -> getSkinnable().selectImage(imageView.getCurrentlyLoadedUrl()));
+            }
+        }));
 
-            imageView.setPreserveRatio(true);
+        return imageView;
+    }
 
-            // Set new image URL on property when clicking
-            imageView.isLoadingProperty().addListener(((observable1, oldValue, newValue) -> {
-                if (!newValue) { // Finished loading
-                    imageView.setOnMouseClicked(e -> getSkinnable() // Me no like long lines.
-                        .imageUrlProperty()
-                        .setValue(imageView.getCurrentlyLoadedUrl())
-                    );
-                }
-            }));
+    /**
+     * Adds tiles to the end of the grid until there are enough for a number of images
+     * @param count Number of images
+     */
+    private void growTiles(int count)
+    {
+        while (images.size() < count) {
+            int i = images.size();
+            TileImageView imageView = createTile();
 
             images.add(imageView);
+            drawingGridPane.add(imageView, i % maxPerRow, i / maxPerRow);
+        }
+    }
+
+    /**
+     * Removes tiles added for further pages, so a new search starts with the limit again
+     * @param count Number of tiles to keep, at least the limit is kept
+     */
+    private void shrinkTiles(int count)
+    {
+        count = Math.max(count, minimumTiles);
+
+        while (images.size() > count) {
+            TileImageView imageView = images.remove(images.size() - 1);
+            imageView.endLoadingState();
+            imageView.emptyView();
+            drawingGridPane.getChildren().remove(imageView);
         }
     }
 
@@ -165,29 +234,237 @@ public class TileSkin extends SkinBase<ImageSearchControl>
             }
         });
 
+        // Resize behaviour: Change with and height when resizing horizontally
+        getSkinnable().widthProperty().addListener((observable, oldValue, newValue) -> {
+            int newWidth = (int) Math.floor(newValue.doubleValue() / maxPerRow);
+
+            for (TileImageView imageView : images) {
+                imageView.setImageWidthHeight(newWidth);
+            }
+
+            updateImageBucket();
+        });
+
+        // Moving the control to another screen may change the output scale
+        outputScaleWatcher = new OutputScaleWatcher(getSkinnable(), this::updateImageBucket);
+
         // As soon as a new list was loaded
         getSkinnable().imageListProperty().addListener((observable, oldList, newList) -> {
             if (newList.size() > 0) {
+                ImageLoadScheduler scheduler = ImageLoadScheduler.getInstance();
+
+                // While a search is still delivering URLs, only the appended ones need to be loaded. Otherwise
+                // images of the previous list that didn't start loading yet aren't needed anymore.
+                boolean appended = ImageSearchControl.extendsList(oldList, newList);
+                if (!appended) {
+                    scheduler.cancelGroup(this);
+                    loadRequests.clear();
+                    shrinkTiles(newList.size());
+                    imageBucket = currentBucket();
+                }
 
-                int imageWidthHeight = (int) (Math.floor(getSkinnable().getWidth() / maxPerRow)) * 2;
+                // Further pages with infinite scrolling bring more images than there are tiles
+                if (getSkinnable().isInfiniteScroll()) {
+                    growTiles(newList.size());
+                }
 
-                // Set the new necessary images
+                // Set the new necessary images, visible ones are loaded first
                 int i;
 
-                for (i = 0; i < newList.size(); i++) {
-                    TileImageView image = images.get(i);
-                    final String url = newList.get(i);
-                    image.loadImage(url, new Image(url, imageWidthHeight, imageWidthHeight, false, true, true));
+                for (i = appended ? oldList.size() : 0; i < newList.size() && i < images.size(); i++) {
+                    loadTile(images.get(i), newList.get(i), scheduler, false);
                 }
 
-                // Empty the ones not being used
-                for (int j = i; j < images.size(); j++) {
-                    TileImageView image = images.get(j);
-                    image.endLoadingState();
-                    image.emptyView();
+                // Empty the ones not being used, unless more URLs are about to arrive
+                if (!getSkinnable().isLoadingResults()) {
+                    emptyViewsFrom(i);
                 }
             }
         });
+
+        // The search is done, tiles still waiting for a URL won't get one anymore
+        getSkinnable().loadingResultsProperty().addListener((observable, oldValue, newValue) -> {
+            List<String> list = getSkinnable().imageListProperty().getValue();
+
+            if (!newValue && list != null && list.size() > 0) {
+                emptyViewsFrom(list.size());
+            }
+        });
+
+        // Scrolling changes which tiles are visible, so their loads should be started first
+        containerPane.vvalueProperty().addListener((observable, oldValue, newValue) -> updatePriorities());
+        containerPane.viewportBoundsProperty().addListener((observable, oldValue, newValue) -> updatePriorities());
+
+        // Infinite scrolling: Fetch the next page when scrolled close to the end, or if the images don't even fill
+        // the viewport. Pages are added to the grid, which makes it grow and checks again.
+        containerPane.vvalueProperty().addListener((observable, oldValue, newValue) -> loadNextPageIfNearEnd());
+        drawingGridPane.heightProperty().addListener((observable, oldValue, newValue) -> loadNextPageIfNearEnd());
+        getSkinnable().loadingResultsProperty().addListener((observable, oldValue, newValue) -> {
+            if (!newValue) {
+                loadNextPageIfNearEnd();
+            }
+        });
+    }
+
+    /**
+     * Asks the control for the next page if less than a screen height of images is left below the viewport
+     */
+    private void loadNextPageIfNearEnd()
+    {
+        if (!getSkinnable().hasMoreResults() || getSkinnable().isLoadingResults()) {
+            return;
+        }
+
+        double viewportHeight = containerPane.getViewportBounds().getHeight();
+
+        if (viewportHeight <= 0) {
+            return;
+        }
+
+        double scrollRange = Math.max(0, drawingGridPane.getHeight() - viewportHeight);
+        double vrange = containerPane.getVmax() - containerPane.getVmin();
+        double scrolled = vrange > 0 ? (containerPane.getVvalue() - containerPane.getVmin()) / vrange : 1;
+
+        if (scrollRange * (1 - scrolled) < viewportHeight) {
+            getSkinnable().loadNextPage();
+        }
+    }
+
+    /**
+     * Loads the image of a list entry into a tile, in the variant and size bucket that fit the tile
+     * @param tile      The tile
+     * @param listUrl   URL of the image, as found in the image list
+     * @param scheduler Scheduler to load with
+     * @param upgrade   Whether the tile already shows the image and only needs a sharper version of it
+     */
+    private void loadTile(TileImageView tile, String listUrl, ImageLoadScheduler scheduler, boolean upgrade)
+    {
+        // The smallest variant that's still sharp at this size, its space is reserved right away
+        ImageResult result = getSkinnable().getImageResult(listUrl);
+        String url = result.getUrlFor(imageBucket, imageBucket);
+        tile.setAspectRatio(result.getAspectRatio());
+
+        ImageLoadRequest request = loadRequests.get(tile);
+
+        // Asked for the same image again, i.e. the list was updated, don't start its download over
+        if (request == null || !request.isFor(url, imageBucket, imageBucket)) {
+            if (request != null) {
+                request.cancel();
+            }
+
+            request = scheduler.submit(this, url, imageBucket, imageBucket, priorityOf(tile));
+            loadRequests.put(tile, request);
+        }
+
+        if (upgrade) {
+            tile.upgradeImage(url, request.getImage());
+        } else {
+            tile.loadImage(url, request.getImage());
+        }
+    }
+
+    /**
+     * Returns the size bucket that fits the tiles at the current width and output scale
+     * @return The bucket
+     */
+    private int currentBucket()
+    {
+        return SizeBuckets.forTile(
+            Math.floor(getSkinnable().getWidth() / maxPerRow),
+            SizeBuckets.outputScaleOf(getSkinnable())
+        );
+    }
+
+    /**
+     * Reloads the images in a larger size bucket if the tiles outgrew the current one. Shrinking doesn't load
+     * anything, the larger images are simply scaled down.
+     */
+    private void updateImageBucket()
+    {
+        int bucket = currentBucket();
+
+        if (bucket <= imageBucket) {
+            return;
+        }
+
+        imageBucket = bucket;
+
+        List<String> list = getSkinnable().imageListProperty().getValue();
+        if (list == null) {
+            return;
+        }
+
+        ImageLoadScheduler scheduler = ImageLoadScheduler.getInstance();
+
+        for (int i = 0; i < list.size() && i < images.size(); i++) {
+            loadTile(images.get(i), list.get(i), scheduler, true);
+        }
+    }
+
+    /**
+     * Empties all tiles starting at an index
+     * @param start Index of the first tile to empty
+     */
+    private void emptyViewsFrom(int start)
+    {
+        for (int j = start; j < images.size(); j++) {
+            TileImageView image = images.get(j);
+            image.endLoadingState();
+            image.emptyView();
+        }
+    }
+
+    /**
+     * Updates the priorities of all loads that didn't start yet
+     */
+    private void updatePriorities()
+    {
+        Iterator<Map.Entry<TileImageView, ImageLoadRequest>> iterator = loadRequests.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            Map.Entry<TileImageView, ImageLoadRequest> entry = iterator.next();
+
+            if (entry.getValue().getImage().isDone()) {
+                iterator.remove();
+                continue;
+            }
+
+            entry.getValue().setPriority(priorityOf(entry.getKey()));
+        }
+    }
+
+    /**
+     * Determines the load priority of a tile by its position relative to the visible part of the grid
+     * @param tile The tile
+     * @return Its priority
+     */
+    private ImageLoadScheduler.Priority priorityOf(TileImageView tile)
+    {
+        Bounds viewport = containerPane.getViewportBounds();
+        double viewportHeight = viewport.getHeight();
+
+        // Nothing laid out yet, can't tell what's visible
+        if (viewportHeight <= 0) {
+            return ImageLoadScheduler.Priority.NEAR_VIEWPORT;
+        }
+
+        double scrollRange = Math.max(0, drawingGridPane.getHeight() - viewportHeight);
+        double scrolled = (containerPane.getVvalue() - containerPane.getVmin())
+            / (containerPane.getVmax() - containerPane.getVmin());
+        double top = scrollRange * scrolled;
+        double bottom = top + viewportHeight;
+        Bounds tileBounds = tile.getBoundsInParent();
+
+        if (tileBounds.getMaxY() >= top && tileBounds.getMinY() <= bottom) {
+            return ImageLoadScheduler.Priority.VISIBLE;
+        }
+
+        // Within one screen height above or below
+        if (tileBounds.getMaxY() >= top - viewportHeight && tileBounds.getMinY() <= bottom + viewportHeight) {
+            return ImageLoadScheduler.Priority.NEAR_VIEWPORT;
+        }
+
+        return ImageLoadScheduler.Priority.BACKGROUND;
     }
 
     /**
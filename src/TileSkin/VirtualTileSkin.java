@@ -0,0 +1,362 @@
+package ImageSearchFX.TileSkin;
+
+import ImageSearchFX.ImageLoader.ImageLoadRequest;
+import ImageSearchFX.ImageLoader.ImageLoadScheduler;
+import ImageSearchFX.ImageLoader.OutputScaleWatcher;
+import ImageSearchFX.ImageLoader.SizeBuckets;
+import ImageSearchFX.ImageSearchControl;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.SkinBase;
+import javafx.scene.layout.Pane;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Displays the found images as tiles, like TileSkin, but only creates tiles for the rows that are currently
+ * visible. Rows are cells of a ListView, which are recycled while scrolling, so the number of nodes and the number
+ * of images loaded at once depend on the height of the control instead of the number of results.
+ *
+ * Use it via setSkin() or with CSS: -fx-skin: "ImageSearchFX.TileSkin.VirtualTileSkin";
+ *
+ * @author Pascal Thormeier <pascal.thormeier@students.fhnw.ch>
+ */
+public class VirtualTileSkin extends SkinBase<ImageSearchControl>
+{
+    /**
+     * Virtualized list of rows, every row is a list of image URLs
+     */
+    private ListView<List<String>> rowList;
+
+    /**
+     * All row cells created so far, the ListView only creates as many as fit into the viewport
+     */
+    private List<TileRowCell> rowCells = new ArrayList<>();
+
+    /**
+     * Maximum number of images per row
+     */
+    private int maxPerRow;
+
+    /**
+     * Size bucket the images of the current list are requested in, only grows until the next list, see SizeBuckets
+     */
+    private int imageBucket = 0;
+
+    /**
+     * Requests sharper images when the control is moved to a screen with a higher output scale
+     */
+    private OutputScaleWatcher outputScaleWatcher;
+
+    /**
+     * Constructor used by CSS, takes the number of images per row from the control
+     *
+     * @param control The control for which this Skin should attach to.
+     */
+    public VirtualTileSkin(ImageSearchControl control)
+    {
+        this(control, control.getMaxPerRow());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param control The control for which this Skin should attach to.
+     * @param perRow  Number of images per row
+     */
+    public VirtualTileSkin(ImageSearchControl control, int perRow)
+    {
+        super(control);
+
+        initializeSelf(perRow);
+        initializeParts();
+        layoutParts();
+        addValueChangeListeners();
+    }
+
+    /**
+     * Initializes basic stuff
+     *
+     * @param maxPerRow Maximum number of images per row
+     */
+    private void initializeSelf(int maxPerRow)
+    {
+        this.maxPerRow = maxPerRow;
+
+        String stylesheet = getClass().getResource("tileSkin.css").toExternalForm();
+        getSkinnable().getStylesheets().add(stylesheet);
+    }
+
+    /**
+     * Initializes all parts of this skin
+     */
+    private void initializeParts()
+    {
+        rowList = new ListView<>();
+        rowList.getStyleClass().addAll("edge-to-edge", "virtual-tile-skin", "tile-skin-content");
+        rowList.setFocusTraversable(false);
+        rowList.setCellFactory(listView -> {
+            TileRowCell cell = new TileRowCell();
+            rowCells.add(cell);
+
+            return cell;
+        });
+    }
+
+    /**
+     * Put the list into the control
+     */
+    private void layoutParts()
+    {
+        getChildren().add(rowList);
+    }
+
+    /**
+     * Add value changed listeners
+     */
+    private void addValueChangeListeners()
+    {
+        // Change of loading state should trigger replacement of images with loading spinner, see TileImageView
+        getSkinnable().isSearchingProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue) {
+                for (TileRowCell cell : rowCells) {
+                    cell.startLoadingState();
+                }
+            }
+        });
+
+        // As soon as a new list was loaded, split it into rows. Only the visible ones are rendered by the ListView.
+        getSkinnable().imageListProperty().addListener((observable, oldList, newList) -> {
+            if (newList.size() > 0) {
+                // While a search is still delivering URLs, only the last (partial) row and the new ones change
+                boolean appended = ImageSearchControl.extendsList(oldList, newList);
+                int firstRow = appended ? oldList.size() / maxPerRow : 0;
+                List<List<String>> rows = new ArrayList<>();
+
+                for (int i = firstRow * maxPerRow; i < newList.size(); i += maxPerRow) {
+                    rows.add(new ArrayList<>(newList.subList(i, Math.min(i + maxPerRow, newList.size()))));
+                }
+
+                if (!appended) {
+                    // Images of the previous list that didn't start loading yet aren't needed anymore
+                    ImageLoadScheduler.getInstance().cancelGroup(this);
+                    imageBucket = currentBucket();
+                    rowList.getItems().setAll(rows);
+                    return;
+                }
+
+                List<List<String>> items = rowList.getItems();
+
+                if (firstRow < items.size() && !rows.isEmpty()) {
+                    items.set(firstRow, rows.remove(0));
+                }
+
+                items.addAll(rows);
+            }
+        });
+
+        // Resize behaviour: Rows are exactly one tile high, so the ListView doesn't need to measure them
+        getSkinnable().widthProperty().addListener((observable, oldValue, newValue) -> {
+            double tileSize = tileSize();
+
+            rowList.setFixedCellSize(tileSize > 0 ? tileSize : -1);
+            updateImageBucket();
+            rowList.refresh();
+        });
+
+        // Moving the control to another screen may change the output scale
+        outputScaleWatcher = new OutputScaleWatcher(getSkinnable(), () -> {
+            if (updateImageBucket()) {
+                rowList.refresh();
+            }
+        });
+    }
+
+    /**
+     * Returns the size bucket that fits the tiles at the current width and output scale
+     * @return The bucket
+     */
+    private int currentBucket()
+    {
+        return SizeBuckets.forTile(tileSize(), SizeBuckets.outputScaleOf(getSkinnable()));
+    }
+
+    /**
+     * Switches to a larger size bucket if the tiles outgrew the current one. Shrinking keeps the larger images, they're
+     * simply scaled down. Cells request the sharper images when they're updated.
+     * @return True if the bucket grew
+     */
+    private boolean updateImageBucket()
+    {
+        int bucket = currentBucket();
+
+        if (bucket <= imageBucket) {
+            return false;
+        }
+
+        imageBucket = bucket;
+
+        return true;
+    }
+
+    @Override
+    public void dispose()
+    {
+        ImageLoadScheduler.getInstance().cancelGroup(this);
+        outputScaleWatcher.dispose();
+
+        super.dispose();
+    }
+
+    /**
+     * Width and height of a single tile
+     * @return Tile size
+     */
+    private double tileSize()
+    {
+        return Math.floor(getSkinnable().getWidth() / maxPerRow);
+    }
+
+    /**
+     * A single row of tiles, reused for different rows while scrolling
+     */
+    private class TileRowCell extends ListCell<List<String>>
+    {
+        /**
+         * Pane the tiles are positioned in, not a HBox since hovered tiles are moved to front
+         */
+        private final Pane tilePane = new Pane();
+
+        /**
+         * Tiles of this row
+         */
+        private final List<TileImageView> tiles = new ArrayList<>();
+
+        /**
+         * Image loads of the tiles, by tile index, null if there is none
+         */
+        private final ImageLoadRequest[] loadRequests = new ImageLoadRequest[maxPerRow];
+
+        /**
+         * Constructor, creates the tiles once
+         */
+        TileRowCell()
+        {
+            getStyleClass().add("tile-row-cell");
+
+            for (int i = 0; i < maxPerRow; i++) {
+                TileImageView imageView = new TileImageView();
+                imageView.setPreserveRatio(true);
+
+                // Set new image URL on property when clicking
+                imageView.setOnMouseClicked(e -> {
+                    if (!imageView.isLoading() && imageView.getCurrentlyLoadedUrl() != null) {
+                        getSkinnable().selectImage(imageView.getCurrentlyLoadedUrl());
+                    }
+                });
+
+                tiles.add(imageView);
+                tilePane.getChildren().add(imageView);
+            }
+        }
+
+        /**
+         * Cancels the loads of the tiles starting at an index, the cell shows another row or a shorter one now
+         * @param start Index of the first tile
+         */
+        private void cancelLoads(int start)
+        {
+            for (int i = start; i < loadRequests.length; i++) {
+                if (loadRequests[i] != null) {
+                    loadRequests[i].cancel();
+                    loadRequests[i] = null;
+                }
+            }
+        }
+
+        @Override
+        protected void updateItem(List<String> row, boolean empty)
+        {
+            super.updateItem(row, empty);
+            setText(null);
+
+            if (empty || row == null) {
+                cancelLoads(0);
+
+                for (TileImageView tile : tiles) {
+                    tile.endLoadingState();
+                    tile.emptyView();
+                }
+
+                setGraphic(null);
+                return;
+            }
+
+            double tileSize = tileSize();
+            int imageWidthHeight = imageBucket;
+
+            for (int i = 0; i < tiles.size(); i++) {
+                TileImageView tile = tiles.get(i);
+                tile.setLayoutX(i * tileSize);
+                tile.setImageWidthHeight(tileSize);
+
+                if (i < row.size()) {
+                    // Cells only exist for rows in or close to the viewport. Cells are updated for the same row again
+                    // and again, a request for the same image is kept instead of starting its download over.
+                    String url = row.get(i);
+                    boolean requested = false;
+
+                    if (loadRequests[i] == null || !loadRequests[i].isFor(url, imageWidthHeight, imageWidthHeight)) {
+                        if (loadRequests[i] != null) {
+                            loadRequests[i].cancel();
+                        }
+
+                        loadRequests[i] = ImageLoadScheduler.getInstance().submit(
+                            VirtualTileSkin.this,
+                            url,
+                            imageWidthHeight,
+                            imageWidthHeight,
+                            ImageLoadScheduler.Priority.VISIBLE
+                        );
+                        requested = true;
+                    }
+
+                    // The bucket grew and the tile already shows this image, keep it until the sharper one is loaded
+                    if (requested && url.equals(tile.getCurrentlyLoadedUrl())) {
+                        tile.upgradeImage(url, loadRequests[i].getImage());
+                    } else {
+                        tile.loadImage(url, loadRequests[i].getImage());
+                    }
+                } else {
+                    tile.endLoadingState();
+                    tile.emptyView();
+                }
+            }
+
+            // The cell shows a shorter row now, loads for the tiles left empty aren't needed anymore
+            cancelLoads(row.size());
+
+            setGraphic(tilePane);
+
+            // Infinite scrolling: The last rows came into view, fetch the next page
+            if (getIndex() >= getListView().getItems().size() - 2) {
+                getSkinnable().loadNextPage();
+            }
+        }
+
+        /**
+         * Shows the loading spinner on all tiles that show something
+         */
+        void startLoadingState()
+        {
+            if (isEmpty()) {
+                return;
+            }
+
+            for (TileImageView tile : tiles) {
+                tile.startLoadingState();
+            }
+        }
+    }
+}
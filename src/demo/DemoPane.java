@@ -2,6 +2,8 @@ package ImageSearchFX.demo;
 
 import ImageSearchFX.Flippanel.FlipPanel;
 import ImageSearchFX.ImageSearchControl;
+import ImageSearchFX.ImageSearcher.Cache.CachingImageSearcher;
+import ImageSearchFX.ImageSearcher.SingleFlight.SingleFlightImageSearcher;
 import ImageSearchFX.ImageSearcher.HTTP.Pexels.Connector.PexelsConnector;
 import ImageSearchFX.ImageSearcher.HTTP.HttpImageSearcher;
 import ImageSearchFX.ImageSearcher.HTTP.Pexels.Factory.PexelsHttpImageSearcherFactory;
@@ -75,9 +77,14 @@ public class DemoPane extends BorderPane
     {
         flipPanel = new FlipPanel();
 
-        // That's the actual control!
+        // That's the actual control! The cache answers searches for terms that were already searched for, while
+        // single flight makes sure concurrent searches for the same term only cause a single request. The rest stays
+        // within the request quota of the Pexels API key.
         PexelsHttpImageSearcherFactory factory = new PexelsHttpImageSearcherFactory();
-        imageSearchControl = new ImageSearchControl(factory.get(), 48);
+        imageSearchControl = new ImageSearchControl(
+            new CachingImageSearcher(new SingleFlightImageSearcher(factory.getRateLimited())),
+            48
+        );
 
         nameLabel = new Label("Building name");
         nameField = new TextField("Empire State Building");
@@ -1,5 +1,6 @@
 package ImageSearchFX.demo;
 
+import ImageSearchFX.ImageLoader.ImageCache;
 import javafx.application.Application;
 import javafx.scene.Scene;
 import javafx.scene.layout.Region;
@@ -15,6 +16,9 @@ public class DemoStarter extends Application
     @Override
     public void start(Stage primaryStage) throws Exception
     {
+        // Thumbnails seen in earlier runs of the demo don't need to be downloaded again
+        ImageCache.getInstance().enableDiskCache();
+
         Region rootPanel = new DemoPane();
 
         Scene scene = new Scene(rootPanel, 1200, 950);
@@ -54,6 +54,10 @@ public class ImageSearchDemoStarter
 
         // Print another 27 ticks, separated because of cancel simulation above
         tick(4, 30);
+
+        // Stop the request threads again
+        searcher.close();
+        factory.close();
     }
 
     /**